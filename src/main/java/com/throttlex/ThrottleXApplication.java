@@ -4,9 +4,11 @@ import com.throttlex.config.ThrottleXProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableConfigurationProperties(ThrottleXProperties.class)
+@EnableScheduling
 public class ThrottleXApplication {
 
     public static void main(String[] args) {
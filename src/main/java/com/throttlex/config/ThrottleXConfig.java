@@ -1,9 +1,17 @@
 package com.throttlex.config;
 
 import com.throttlex.middleware.ThrottleXFilter;
+import com.throttlex.service.CircuitBreaker;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.*;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 @Configuration
 public class ThrottleXConfig {
 
@@ -14,4 +22,30 @@ public class ThrottleXConfig {
         reg.addUrlPatterns("/*");
         return reg;
     }
+
+    /**
+     * Bounded pool for database-backed decisions. A full queue rejects immediately
+     * (AbortPolicy) so the caller falls back instead of piling up behind the database.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService decisionExecutor(ThrottleXProperties properties) {
+        ThrottleXProperties.Decision cfg = properties.getDecision();
+        AtomicInteger seq = new AtomicInteger();
+        ThreadFactory threads = r -> {
+            Thread t = new Thread(r, "throttlex-decision-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        return new ThreadPoolExecutor(cfg.getExecutorThreads(), cfg.getExecutorThreads(),
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(cfg.getExecutorQueueCapacity()),
+                threads,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Bean
+    public CircuitBreaker databaseCircuitBreaker(ThrottleXProperties properties) {
+        return new CircuitBreaker(properties.getFallback().getFailureThreshold(),
+                properties.getFallback().getOpenDurationMs());
+    }
 }
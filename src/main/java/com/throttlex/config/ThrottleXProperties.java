@@ -1,9 +1,16 @@
 package com.throttlex.config;
 
+import com.throttlex.model.RequestPriority;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 @Component
 @ConfigurationProperties(prefix = "throttlex")
 @Data
@@ -16,4 +23,241 @@ public class ThrottleXProperties {
 
     /** Default sliding-window size in seconds. */
     private long defaultWindowSeconds = 60;
+
+    /** Time-partitioned storage of the sliding-window request log. */
+    private SlidingWindow slidingWindow = new SlidingWindow();
+
+    /** Calendar quota (daily / monthly) reconciliation settings. */
+    private Quota quota = new Quota();
+
+    /** Shadow (dry-run) policy settings. */
+    private Shadow shadow = new Shadow();
+
+    /** Latency budget and executor for database-backed decisions. */
+    private Decision decision = new Decision();
+
+    /** Circuit breaker and local fallback used while the database is degraded. */
+    private Fallback fallback = new Fallback();
+
+    /** Node-level, priority-aware load shedding in the filter. */
+    private Shedding shedding = new Shedding();
+
+    /** Hierarchical (multi-level) policies. */
+    private Composite composite = new Composite();
+
+    /** Per-route request costs (permits taken per request). */
+    private Cost cost = new Cost();
+
+    /** Heavy-hitter detection and hot-key promotion. */
+    private HotKeys hotKeys = new HotKeys();
+
+    /** Spreading usage and sliding-window state over several databases. */
+    private Sharding sharding = new Sharding();
+
+    @Data
+    public static class SlidingWindow {
+        /** Time span covered by each log partition table, in seconds. */
+        private long partitionSeconds = 300;
+
+        /**
+         * Partition tables rotated through. One is always being emptied for reuse, so
+         * windows up to {@code (partitions - 2) * partitionSeconds} are exact.
+         */
+        private int partitions = 6;
+
+        public long maxWindowSeconds() {
+            return (partitions - 2) * partitionSeconds;
+        }
+    }
+
+    @Data
+    public static class Quota {
+        /** How often locally counted quota usage is written back, in milliseconds. */
+        private long flushIntervalMs = 1000;
+
+        /**
+         * Maximum unreconciled requests a node may admit per key. A request arriving at
+         * the cap is denied with a retry after one flush interval while the node's usage
+         * is written back. Bounds how far a quota can overshoot, per node.
+         */
+        private long maxOvershoot = 100;
+    }
+
+    @Data
+    public static class Shadow {
+        /** Most distinct keys each shadow policy keeps in-memory state for. */
+        private long maxKeys = 100_000;
+    }
+
+    @Data
+    public static class Decision {
+        /** Longest a check may wait on the database before falling back locally (0 = no budget, run inline). */
+        private long latencyBudgetMs = 50;
+
+        /** Threads running database decisions; keep at or below the Hikari pool size. */
+        private int executorThreads = 20;
+
+        /** Decisions queued for the executor before new ones are rejected to the fallback. */
+        private int executorQueueCapacity = 1000;
+
+        /**
+         * Extra time a key's next batch waits to collect concurrent requests, in microseconds.
+         * Requests arriving while the key's previous transaction runs are batched regardless.
+         */
+        private long coalesceWindowMicros = 50;
+
+        /**
+         * Release the servlet thread while a check waits on the database (servlet async),
+         * instead of blocking it for up to the latency budget. Needs a budget above 0.
+         */
+        private boolean asyncServlet = true;
+    }
+
+    @Data
+    public static class Fallback {
+        /** Consecutive failures or blown budgets that open the circuit breaker. */
+        private int failureThreshold = 5;
+
+        /** How long the breaker stays open before a probe is let through, in milliseconds. */
+        private long openDurationMs = 5000;
+
+        /** Most distinct keys the local fallback limiter keeps state for. */
+        private long maxLocalKeys = 100_000;
+    }
+
+    @Data
+    public static class Shedding {
+        private boolean enabled = true;
+
+        /** Requests inside the filter at which in-flight pressure reaches 1.0 (Tomcat default max threads). */
+        private int maxInFlight = 200;
+
+        /** Threads waiting for a Hikari connection at which pool pressure reaches 1.0. */
+        private int maxPoolPending = 20;
+
+        /** Mean decision latency at which latency pressure reaches 1.0, in milliseconds. */
+        private long latencyTargetMs = 50;
+
+        /** How often pool and latency signals are sampled, in milliseconds. */
+        private long sampleIntervalMs = 100;
+
+        /**
+         * Header carrying an explicit tier (CRITICAL/HIGH/NORMAL/LOW). Unset by default: only set it
+         * when a trusted gateway strips the header from client requests, since any client can send it.
+         */
+        private String priorityHeader;
+
+        /**
+         * Tier for requests whose API key (the {@code throttlex.composite.api-key-header}) has its own
+         * {@code apikey:<value>} policy. Other keys, including made-up ones, get the default tier.
+         */
+        private RequestPriority apiKeyPriority = RequestPriority.HIGH;
+
+        /** How often the set of API keys with a policy is reloaded from the database, in milliseconds. */
+        private long apiKeyRefreshMs = 30_000;
+
+        /** Tier for everything else. */
+        private RequestPriority defaultPriority = RequestPriority.NORMAL;
+
+        /** Route prefix to tier; the longest matching prefix wins. */
+        private Map<String, RequestPriority> routes = new LinkedHashMap<>(Map.of("/admin", RequestPriority.CRITICAL));
+
+        /** Pressure at which each tier starts being shed; tiers without an entry are never shed. */
+        private Map<RequestPriority, Double> shedAt = new EnumMap<>(Map.of(
+                RequestPriority.LOW, 0.6,
+                RequestPriority.NORMAL, 0.8,
+                RequestPriority.HIGH, 1.0));
+    }
+
+    @Data
+    public static class Composite {
+        /**
+         * Also enforce api-key, tenant and route policies on every request. Off by default:
+         * it adds a batched lookup per check and narrows request coalescing to identical levels.
+         */
+        private boolean enabled = false;
+
+        private String apiKeyHeader = "X-API-Key";
+
+        private String tenantHeader = "X-Tenant-Id";
+    }
+
+    @Data
+    public static class Cost {
+        /** Permits taken by a request on a route without an entry below. */
+        private long defaultCost = 1;
+
+        /** Route prefix -> permits per request; the longest matching prefix wins. */
+        private Map<String, Long> routes = new LinkedHashMap<>();
+
+        /**
+         * Request attribute through which the application may report a request's actual
+         * cost once served (e.g. by response size). Any excess over the up-front cost is
+         * debited after the response.
+         */
+        private String attribute = "throttlex.cost";
+    }
+
+    @Data
+    public static class HotKeys {
+        private boolean enabled = true;
+
+        /** Keys reported by /admin/hot-keys. */
+        private int topK = 100;
+
+        /** Count-Min Sketch columns and rows (memory = width * depth longs). */
+        private int sketchWidth = 4096;
+        private int sketchDepth = 4;
+
+        /** Independently locked Space-Saving instances; each tracks 2 * topK / stripes keys. */
+        private int stripes = 16;
+
+        /** Measurement window; rates and promotions are recomputed once per window. */
+        private long windowMs = 10_000;
+
+        /** Requests/second at which a token-bucket key moves to the leased local fast path (0 = never). */
+        private long promoteRate = 500;
+
+        /** Requests/second below which a promoted key goes back to per-request database checks. */
+        private long demoteRate = 250;
+
+        /** Tokens taken from the shared bucket per lease, capped at a quarter of the bucket. */
+        private long leaseSize = 50;
+    }
+
+    @Data
+    public static class Sharding {
+        /**
+         * Keep usage and sliding-window state on the shards below, by consistent hash of
+         * the key, instead of the primary datasource. Policies and quotas stay on the primary.
+         */
+        private boolean enabled = false;
+
+        /** Points each shard takes on the hash ring; more points even out the key split. */
+        private int virtualNodes = 128;
+
+        /** Shards on the ring at startup. Shards added at runtime must be appended here. */
+        private List<Shard> shards = new ArrayList<>();
+    }
+
+    @Data
+    public static class Shard {
+        /** Ring identity: renaming a shard moves its keys. */
+        private String name;
+
+        private String url;
+
+        private String username;
+
+        private String password;
+
+        /** Connections in this shard's own pool. */
+        private int maximumPoolSize = 10;
+
+        /**
+         * Longest wait for a connection from this shard's pool, in milliseconds. Short like the
+         * primary's, so a struggling shard fails checks over to the local fallback quickly.
+         */
+        private long connectionTimeoutMs = 2000;
+    }
 }
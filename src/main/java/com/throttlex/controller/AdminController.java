@@ -1,10 +1,20 @@
 package com.throttlex.controller;
 
+import com.throttlex.dto.HotKeyResponse;
 import com.throttlex.dto.MetricsResponse;
 import com.throttlex.dto.PolicyRequest;
+import com.throttlex.dto.ShadowPolicyRequest;
+import com.throttlex.dto.ShadowPolicyResponse;
+import com.throttlex.dto.ShardRequest;
+import com.throttlex.dto.ShardResponse;
+import com.throttlex.middleware.AdmissionController;
 import com.throttlex.model.PolicyEntity;
 import com.throttlex.model.UsageRecord;
+import com.throttlex.service.HeavyHitterService;
+import com.throttlex.service.HotKeyService;
 import com.throttlex.service.PolicyService;
+import com.throttlex.service.ShadowPolicyService;
+import com.throttlex.service.ShardRebalancer;
 import com.throttlex.service.ThrottleXService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
@@ -14,6 +24,7 @@ import org.springframework.web.bind.annotation.*;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @RestController
@@ -23,15 +34,23 @@ public class AdminController {
 
     private final ThrottleXService throttleXService;
     private final PolicyService policyService;
+    private final ShadowPolicyService shadowPolicyService;
+    private final AdmissionController admissionController;
+    private final HeavyHitterService heavyHitterService;
+    private final HotKeyService hotKeyService;
+    private final Optional<ShardRebalancer> shardRebalancer;
 
     // ─── Health & Status ────────────────────────────────────────────────────────
 
     @GetMapping("/status")
     public ResponseEntity<Map<String, Object>> status() {
+        Map<String, Object> breaker = throttleXService.breakerStatus();
         return ResponseEntity.ok(Map.of(
                 "service", "ThrottleX",
-                "status", "UP",
+                "status", "CLOSED".equals(breaker.get("state")) ? "UP" : "DEGRADED",
                 "version", "1.0.0",
+                "circuitBreaker", breaker,
+                "loadShedding", admissionController.status(),
                 "timestamp", Instant.now().toString()
         ));
     }
@@ -101,8 +120,64 @@ public class AdminController {
         ));
     }
 
+    // ─── Shadow (dry-run) policies ──────────────────────────────────────────────
+
+    @GetMapping("/shadow-policies")
+    public ResponseEntity<List<ShadowPolicyResponse>> listShadowPolicies() {
+        return ResponseEntity.ok(shadowPolicyService.list());
+    }
+
+    @PostMapping("/shadow-policies")
+    public ResponseEntity<ShadowPolicyResponse> createShadowPolicy(@RequestBody ShadowPolicyRequest request) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(shadowPolicyService.register(request));
+    }
+
+    @DeleteMapping("/shadow-policies")
+    public ResponseEntity<Map<String, String>> deleteShadowPolicy(@RequestParam(required = false) String key,
+                                                                  @RequestParam(required = false) String route) {
+        shadowPolicyService.remove(key, route);
+        return ResponseEntity.ok(Map.of(
+                "target", key != null ? key : route,
+                "message", "Shadow policy deleted successfully"
+        ));
+    }
+
+    // ─── Hot keys ───────────────────────────────────────────────────────────────
+
+    @GetMapping("/hot-keys")
+    public ResponseEntity<List<HotKeyResponse>> hotKeys() {
+        List<HotKeyResponse> keys = heavyHitterService.topKeys().stream()
+                .map(h -> HotKeyResponse.builder()
+                        .key(h.getKey())
+                        .windowCount(h.getCount())
+                        .ratePerSecond(h.getRatePerSecond())
+                        .promoted(hotKeyService.isPromoted(h.getKey()))
+                        .leasedTokens(hotKeyService.leasedTokens(h.getKey()))
+                        .build())
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(keys);
+    }
+
+    // ─── Shards ─────────────────────────────────────────────────────────────────
+
+    @GetMapping("/shards")
+    public ResponseEntity<List<ShardResponse>> listShards() {
+        return ResponseEntity.ok(rebalancer().listShards());
+    }
+
+    /** Add a shard and move its share of keys onto it; returns once the rebalance is done. */
+    @PostMapping("/shards")
+    public ResponseEntity<ShardResponse> addShard(@RequestBody ShardRequest request) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(rebalancer().addShard(request));
+    }
+
     // ─── Helpers ────────────────────────────────────────────────────────────────
 
+    private ShardRebalancer rebalancer() {
+        return shardRebalancer.orElseThrow(() ->
+                new IllegalArgumentException("Sharding is not enabled (throttlex.sharding.enabled)"));
+    }
+
     private MetricsResponse toMetrics(UsageRecord r) {
         PolicyEntity policy = policyService.listPolicies().stream()
                 .filter(p -> p.getPolicyKey().equals(r.getKeyId()))
@@ -0,0 +1,15 @@
+package com.throttlex.dto;
+
+import lombok.*;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HotKeyResponse {
+    private String key;
+    private long windowCount;     // requests in the last window (upper-bound estimate)
+    private double ratePerSecond;
+    private boolean promoted;     // served from a local token lease
+    private long leasedTokens;
+}
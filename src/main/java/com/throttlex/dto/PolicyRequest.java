@@ -13,4 +13,8 @@ public class PolicyRequest {
     private long capacity;
     private long refillRate;
     private long windowSeconds;
+    private long quotaLimit;
+    private Policy.QuotaPeriod quotaPeriod;
+    private String quotaTimezone;
+    private Policy.FailureMode failureMode;
 }
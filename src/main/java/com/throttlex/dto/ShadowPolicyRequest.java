@@ -0,0 +1,17 @@
+package com.throttlex.dto;
+
+import com.throttlex.model.Policy;
+import lombok.*;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShadowPolicyRequest {
+    private String key;   // attach to one key ...
+    private String route; // ... or to every key on a route prefix
+    private Policy.PolicyType type;
+    private long capacity;
+    private long refillRate;
+    private long windowSeconds;
+}
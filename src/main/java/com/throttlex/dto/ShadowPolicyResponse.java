@@ -0,0 +1,26 @@
+package com.throttlex.dto;
+
+import com.throttlex.model.Policy;
+import lombok.*;
+
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShadowPolicyResponse {
+    private String key;
+    private String route;
+    private Policy.PolicyType type;
+    private long capacity;
+    private long refillRate;
+    private long windowSeconds;
+    private long evaluated;
+    private long wouldDeny;
+    private long enforcedDeny;
+    private long newDenials; // allowed today, would be rejected by the shadow policy
+    private long newAllows;  // rejected today, would be allowed by the shadow policy
+    private double meanLatencyMicros;
+    private Map<String, Long> latencyHistogram;
+}
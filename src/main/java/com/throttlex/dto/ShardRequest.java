@@ -0,0 +1,16 @@
+package com.throttlex.dto;
+
+import lombok.*;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShardRequest {
+    private String name;
+    private String url;
+    private String username;
+    private String password;
+    private Integer maximumPoolSize;
+    private Long connectionTimeoutMs;
+}
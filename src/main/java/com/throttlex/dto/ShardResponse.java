@@ -0,0 +1,16 @@
+package com.throttlex.dto;
+
+import lombok.*;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShardResponse {
+    private String name;
+    private int ringPoints;       // virtual nodes owned on the hash ring
+    private long keys;            // usage records stored on the shard
+    private long movedKeys;       // rebalance only: keys moved onto the shard
+    private long movedLogRows;    // rebalance only: sliding-window log rows moved with them
+    private long durationMs;      // rebalance only
+}
@@ -0,0 +1,106 @@
+package com.throttlex.limiter;
+
+import com.throttlex.model.Policy;
+import com.throttlex.model.RateLimitDecision;
+import com.throttlex.model.SlidingWindowRecord;
+import com.throttlex.model.UsageRecord;
+import com.throttlex.persistence.SlidingWindowRepository;
+import com.throttlex.persistence.SlidingWindowRepository.WindowUsage;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Evaluates several policy levels (e.g. client, API key, tenant, route) as one
+ * all-or-nothing decision. Every level is checked against a tentative copy of
+ * its state first; only when all levels allow is anything consumed, so a denial
+ * at an upper level never leaks tokens from the levels below it.
+ *
+ * Runs inside the caller's transaction, on usage records the caller already locked.
+ */
+@Component
+@RequiredArgsConstructor
+public class CompositeLimiter {
+
+    private final TokenBucketLimiter tokenBucketLimiter;
+    private final SlidingWindowRepository slidingWindowRepository;
+
+    /**
+     * Decides requests that share the same levels, in arrival order. A request's
+     * cost is taken from every level.
+     * @param records Locked usage record per level, same order as {@code policies}.
+     * @param permits Cost of each request.
+     * @return one decision per request, in order: the denying level's, or when
+     *         allowed the level with the fewest permits left.
+     */
+    public RateLimitDecision[] decideAll(List<UsageRecord> records, List<Policy> policies, long[] permits) {
+        int count = permits.length;
+        int levels = policies.size();
+        long now = System.currentTimeMillis();
+
+        // Sliding-window levels: one usage query per level for the whole batch
+        WindowUsage[] windows = new WindowUsage[levels];
+        for (int l = 0; l < levels; l++) {
+            Policy policy = policies.get(l);
+            if (policy.getType() == Policy.PolicyType.SLIDING_WINDOW) {
+                String keyId = records.get(l).getKeyId();
+                long windowStart = now - policy.getWindowSeconds() * 1000L;
+                windows[l] = slidingWindowRepository.usageInWindow(keyId, windowStart);
+            }
+        }
+
+        RateLimitDecision[] decisions = new RateLimitDecision[count];
+        List<SlidingWindowRecord> rows = new ArrayList<>();
+        UsageRecord[] tentative = new UsageRecord[levels];
+        for (int i = 0; i < count; i++) {
+            // Phase 1: every level must admit, nothing is consumed yet
+            RateLimitDecision decision = null;
+            for (int l = 0; l < levels && (decision == null || decision.isAllowed()); l++) {
+                Policy policy = policies.get(l);
+                RateLimitDecision level;
+                if (policy.getType() == Policy.PolicyType.SLIDING_WINDOW) {
+                    boolean fits = windows[l].getPermits() + permits[i] <= policy.getCapacity();
+                    level = SlidingWindowLimiter.decision(policy, fits,
+                            fits ? windows[l].plus(permits[i], now) : windows[l], now);
+                } else {
+                    tentative[l] = copyOf(records.get(l));
+                    level = tokenBucketLimiter.decide(tentative[l], policy, permits[i]);
+                }
+                decision = (decision == null) ? level : decision.tighter(level);
+            }
+            decisions[i] = decision;
+            if (!decision.isAllowed()) {
+                continue;
+            }
+            // Phase 2: commit all levels
+            for (int l = 0; l < levels; l++) {
+                if (policies.get(l).getType() == Policy.PolicyType.SLIDING_WINDOW) {
+                    windows[l] = windows[l].plus(permits[i], now);
+                    rows.add(SlidingWindowRecord.builder()
+                            .keyId(records.get(l).getKeyId())
+                            .requestTime(now)
+                            .permits(permits[i])
+                            .build());
+                } else {
+                    records.get(l).setTokens(tentative[l].getTokens());
+                    records.get(l).setLastRefill(tentative[l].getLastRefill());
+                }
+            }
+        }
+
+        if (!rows.isEmpty()) {
+            slidingWindowRepository.saveAll(rows);
+        }
+        return decisions;
+    }
+
+    private static UsageRecord copyOf(UsageRecord record) {
+        return UsageRecord.builder()
+                .keyId(record.getKeyId())
+                .tokens(record.getTokens())
+                .lastRefill(record.getLastRefill())
+                .build();
+    }
+}
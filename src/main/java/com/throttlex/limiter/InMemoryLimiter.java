@@ -0,0 +1,113 @@
+package com.throttlex.limiter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.throttlex.model.Policy;
+import com.throttlex.model.RateLimitDecision;
+import com.throttlex.model.UsageRecord;
+
+import java.time.Duration;
+
+/**
+ * Node-local limiter that keeps per-key state in a bounded Caffeine cache.
+ *
+ * Token-bucket policies reuse {@link TokenBucketLimiter} on an in-memory
+ * {@link UsageRecord}; sliding-window policies are approximated with a
+ * two-window weighted counter instead of a request log. Nothing is persisted,
+ * so each instance is independent state (e.g. for shadow evaluation).
+ */
+public class InMemoryLimiter {
+
+    private final TokenBucketLimiter tokenBucketLimiter = new TokenBucketLimiter();
+    private final Cache<String, State> states;
+
+    public InMemoryLimiter(long maxKeys, Duration idleExpiry) {
+        this.states = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(idleExpiry)
+                .build();
+    }
+
+    /**
+     * Checks if the request is allowed and consumes tokens/quota if so.
+     * @return true if allowed, false if denied.
+     */
+    public boolean allow(String key, Policy policy) {
+        return allow(key, policy, 1);
+    }
+
+    /** Decide a request costing {@code permits}, consuming them if allowed. */
+    public RateLimitDecision decide(String key, Policy policy, long permits) {
+        long now = System.currentTimeMillis();
+        State state = states.get(key, k -> new State(k, policy.getCapacity(), now));
+        synchronized (state) {
+            if (policy.getType() == Policy.PolicyType.SLIDING_WINDOW) {
+                return state.decideWindow(policy, now, permits);
+            }
+            return tokenBucketLimiter.decide(state.bucket, policy, permits);
+        }
+    }
+
+    public boolean allow(String key, Policy policy, long permits) {
+        return decide(key, policy, permits).isAllowed();
+    }
+
+    public void reset(String key) {
+        states.invalidate(key);
+    }
+
+    public void clear() {
+        states.invalidateAll();
+    }
+
+    private static final class State {
+        private final UsageRecord bucket;
+        private long windowStart;
+        private long previousCount;
+        private long currentCount;
+
+        private State(String key, long capacity, long now) {
+            this.bucket = UsageRecord.builder()
+                    .keyId(key)
+                    .tokens(capacity)
+                    .lastRefill(now)
+                    .build();
+            this.windowStart = now;
+        }
+
+        private RateLimitDecision decideWindow(Policy policy, long now, long permits) {
+            long windowMs = Math.max(1, policy.getWindowSeconds() * 1000L);
+            long elapsedWindows = (now - windowStart) / windowMs;
+            if (elapsedWindows >= 1) {
+                previousCount = (elapsedWindows == 1) ? currentCount : 0;
+                currentCount = 0;
+                windowStart += elapsedWindows * windowMs;
+            }
+            // Weight the previous window by how much of it still overlaps the sliding window
+            double overlap = 1.0 - (double) (now - windowStart) / windowMs;
+            double estimated = previousCount * overlap + currentCount;
+            boolean allowed = estimated + permits <= policy.getCapacity();
+            if (allowed) {
+                currentCount += permits;
+                estimated += permits;
+            }
+            // Fully free once the current window has also slid out; a denied request fits
+            // once enough of the previous window's weight has decayed, else at the next window
+            long untilNextWindow = windowStart + windowMs - now;
+            long retryAfter = 0;
+            if (!allowed) {
+                double excess = estimated + permits - policy.getCapacity();
+                retryAfter = (previousCount > 0 && excess <= previousCount * overlap)
+                        ? (long) Math.ceil(excess * windowMs / previousCount)
+                        : untilNextWindow;
+            }
+            return RateLimitDecision.builder()
+                    .allowed(allowed)
+                    .limit(policy.getCapacity())
+                    .remaining(Math.max(0, (long) Math.floor(policy.getCapacity() - estimated)))
+                    .resetMillis(currentCount > 0 ? untilNextWindow + windowMs : untilNextWindow)
+                    .retryAfterMillis(retryAfter)
+                    .build();
+        }
+    }
+}
@@ -1,14 +1,70 @@
 package com.throttlex.limiter;
 
 import com.throttlex.model.Policy;
+import com.throttlex.model.RateLimitDecision;
 import com.throttlex.model.UsageRecord;
 
+import java.util.Arrays;
+
 public interface Limiter {
     /**
-     * Checks if the request is allowed and consumes tokens/quota if so.
+     * Checks if a request costing {@code permits} is allowed and consumes them if so.
+     * All permits are taken or none are.
      * @param record The usage record (state) for the key.
      * @param policy The policy definition (limits).
+     * @param permits Cost of the request (1 for an ordinary request).
+     * @return the decision, with remaining permits and reset/retry times from the same state.
+     */
+    RateLimitDecision decide(UsageRecord record, Policy policy, long permits);
+
+    /**
+     * Checks if a request costing {@code permits} is allowed and consumes them if so.
      * @return true if allowed, false if denied.
      */
-    boolean allow(UsageRecord record, Policy policy);
+    default boolean allow(UsageRecord record, Policy policy, long permits) {
+        return decide(record, policy, permits).isAllowed();
+    }
+
+    /**
+     * Checks if a single-permit request is allowed and consumes a permit if so.
+     */
+    default boolean allow(UsageRecord record, Policy policy) {
+        return allow(record, policy, 1);
+    }
+
+    /**
+     * Decides requests for the same key in arrival order, with the same outcome as
+     * consecutive {@link #decide} calls with each request's cost.
+     * @return one decision per request, in order.
+     */
+    default RateLimitDecision[] decideAll(UsageRecord record, Policy policy, long[] permits) {
+        RateLimitDecision[] decisions = new RateLimitDecision[permits.length];
+        for (int i = 0; i < permits.length; i++) {
+            decisions[i] = decide(record, policy, permits[i]);
+        }
+        return decisions;
+    }
+
+    /** {@link #decideAll} reduced to allowed/denied. */
+    default boolean[] allowAll(UsageRecord record, Policy policy, long[] permits) {
+        RateLimitDecision[] decisions = decideAll(record, policy, permits);
+        boolean[] allowed = new boolean[decisions.length];
+        for (int i = 0; i < decisions.length; i++) {
+            allowed[i] = decisions[i].isAllowed();
+        }
+        return allowed;
+    }
+
+    /** {@link #allowAll(UsageRecord, Policy, long[])} for {@code count} single-permit requests. */
+    default boolean[] allowAll(UsageRecord record, Policy policy, int count) {
+        long[] permits = new long[count];
+        Arrays.fill(permits, 1);
+        return allowAll(record, policy, permits);
+    }
+
+    /**
+     * Consumes {@code permits} unconditionally, for cost that is only known after the
+     * request was served. May leave the key in debt, which later requests pay off.
+     */
+    void debit(UsageRecord record, Policy policy, long permits);
 }
@@ -1,6 +1,7 @@
 package com.throttlex.limiter;
 
 import com.throttlex.model.Policy;
+import com.throttlex.model.RateLimitDecision;
 import com.throttlex.model.UsageRecord;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
@@ -13,11 +14,27 @@ public class LimiterFactory {
     private final SlidingWindowLimiter slidingWindowLimiter;
 
     public boolean allow(String type, UsageRecord record, Policy policy) {
+        return forType(type).allow(record, policy);
+    }
+
+    public boolean[] allowAll(String type, UsageRecord record, Policy policy, int count) {
+        return forType(type).allowAll(record, policy, count);
+    }
+
+    public RateLimitDecision[] decideAll(String type, UsageRecord record, Policy policy, long[] permits) {
+        return forType(type).decideAll(record, policy, permits);
+    }
+
+    public void debit(String type, UsageRecord record, Policy policy, long permits) {
+        forType(type).debit(record, policy, permits);
+    }
+
+    private Limiter forType(String type) {
         String t = type.toLowerCase().replace("_", "-");
         if ("token-bucket".equals(t)) {
-            return tokenBucketLimiter.allow(record, policy);
+            return tokenBucketLimiter;
         } else if ("sliding-window".equals(t)) {
-            return slidingWindowLimiter.allow(record, policy);
+            return slidingWindowLimiter;
         } else {
             throw new IllegalArgumentException(
                 "Unknown limiter type: " + type + ". Supported: token-bucket, sliding-window");
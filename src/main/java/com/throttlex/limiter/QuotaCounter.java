@@ -0,0 +1,106 @@
+package com.throttlex.limiter;
+
+import lombok.Getter;
+
+/**
+ * Node-local view of one key's quota for one calendar period.
+ *
+ * {@code reconciled} is the period total last read back from the database,
+ * {@code inFlight} is a batch currently being written, and {@code pending}
+ * is what this node has admitted since. All three count against the quota.
+ */
+@Getter
+public class QuotaCounter {
+
+    private final String keyId;
+    private final long periodStart;
+    private final long periodEnd;
+
+    private boolean loaded;
+    private long reconciled;
+    private long inFlight;
+    private long pending;
+    private boolean flushScheduled;
+
+    public QuotaCounter(String keyId, long periodStart, long periodEnd) {
+        this.keyId = keyId;
+        this.periodStart = periodStart;
+        this.periodEnd = periodEnd;
+    }
+
+    public synchronized void load(long used) {
+        if (!loaded) {
+            reconciled = used;
+            loaded = true;
+        }
+    }
+
+    /**
+     * Admit one request if the period has quota left and this node's unreconciled
+     * usage is below {@code maxUnreconciled}.
+     */
+    public synchronized boolean tryAcquire(long limit, long maxUnreconciled) {
+        if (reconciled + inFlight + pending >= limit || inFlight + pending >= maxUnreconciled) {
+            return false;
+        }
+        pending++;
+        return true;
+    }
+
+    /** Whether the period has quota left, counting everything this node admitted. */
+    public synchronized boolean hasQuotaLeft(long limit) {
+        return reconciled + inFlight + pending < limit;
+    }
+
+    public synchronized void release() {
+        pending--;
+    }
+
+    /** Returns true for the first caller after the last flush started, so only one write is queued. */
+    public synchronized boolean scheduleFlush() {
+        if (flushScheduled) {
+            return false;
+        }
+        flushScheduled = true;
+        return true;
+    }
+
+    /** Move pending usage into flight and return the delta to write, or 0 if another flush owns it. */
+    public synchronized long beginFlush() {
+        flushScheduled = false;
+        if (inFlight != 0 || pending == 0) {
+            return 0;
+        }
+        inFlight = pending;
+        pending = 0;
+        return inFlight;
+    }
+
+    /** The in-flight delta was written; {@code used} is the period total now in the database. */
+    public synchronized void completeFlush(long used) {
+        inFlight = 0;
+        reconciled = used;
+    }
+
+    /** The write failed; keep the delta so the next flush retries it. */
+    public synchronized void abortFlush() {
+        pending += inFlight;
+        inFlight = 0;
+    }
+
+    public synchronized long getPending() {
+        return pending;
+    }
+
+    public synchronized long getReconciled() {
+        return reconciled;
+    }
+
+    public synchronized boolean isIdle() {
+        return pending == 0 && inFlight == 0;
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+}
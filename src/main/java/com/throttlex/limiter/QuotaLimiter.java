@@ -0,0 +1,53 @@
+package com.throttlex.limiter;
+
+import com.throttlex.model.Policy;
+import org.springframework.stereotype.Component;
+
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Long-horizon (daily / monthly) quota enforcement.
+ *
+ * Admissions are counted in memory per key and period; the counters are
+ * written to {@code throttlex_quota} in batches by {@code QuotaService}, so
+ * a monthly counter is touched once per flush rather than once per request.
+ */
+@Component
+public class QuotaLimiter {
+
+    private final ConcurrentMap<String, QuotaCounter> counters = new ConcurrentHashMap<>();
+
+    /** Resolve the counter for the period containing {@code now}, creating it on first use. */
+    public QuotaCounter counter(String keyId, Policy policy, long now) {
+        ZoneId zone = policy.quotaZone();
+        Policy.QuotaPeriod period = policy.getQuotaPeriod();
+        long periodStart = period.periodStart(now, zone);
+        return counters.computeIfAbsent(keyId + "|" + periodStart,
+                k -> new QuotaCounter(keyId, periodStart, period.periodEnd(periodStart, zone)));
+    }
+
+    /**
+     * Reserve one request of quota.
+     * @param maxOvershoot Most requests this node may admit before they are written back.
+     * @return true if the period still has quota, false if it is exhausted.
+     */
+    public boolean allow(QuotaCounter counter, Policy policy, long maxOvershoot) {
+        return counter.tryAcquire(policy.getQuotaLimit(), maxOvershoot);
+    }
+
+    public Collection<QuotaCounter> counters() {
+        return counters.values();
+    }
+
+    /** Drop counters whose period has ended and whose usage has been written. */
+    public void evictExpired(long now) {
+        counters.values().removeIf(c -> c.getPeriodEnd() <= now && c.isIdle());
+    }
+
+    public void reset(String keyId) {
+        counters.values().removeIf(c -> c.getKeyId().equals(keyId));
+    }
+}
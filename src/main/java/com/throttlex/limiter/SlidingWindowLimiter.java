@@ -1,12 +1,16 @@
 package com.throttlex.limiter;
 
 import com.throttlex.model.Policy;
+import com.throttlex.model.RateLimitDecision;
 import com.throttlex.model.SlidingWindowRecord;
 import com.throttlex.model.UsageRecord;
 import com.throttlex.persistence.SlidingWindowRepository;
+import com.throttlex.persistence.SlidingWindowRepository.WindowUsage;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
 
 @Component
 @RequiredArgsConstructor
@@ -15,31 +19,99 @@ public class SlidingWindowLimiter implements Limiter {
     private final SlidingWindowRepository slidingWindowRepository;
 
     @Override
-    @Transactional
-    public boolean allow(UsageRecord record, Policy policy) {
+    public RateLimitDecision decide(UsageRecord record, Policy policy, long permits) {
         long now = System.currentTimeMillis();
         long windowMs = policy.getWindowSeconds() * 1000L;
         long windowStart = now - windowMs;
         String keyId = record.getKeyId();
 
-        // 1. Remove expired entries outside the current window to keep table lean
-        slidingWindowRepository.deleteExpired(keyId, windowStart);
-
-        // 2. Count requests within the current window
-        long count = slidingWindowRepository.countRequestsInWindow(keyId, windowStart);
+        // 1. Permits used within the current window (expired partitions are truncated in the background)
+        WindowUsage usage = slidingWindowRepository.usageInWindow(keyId, windowStart);
 
-        // 3. Deny if at or over capacity
-        if (count >= policy.getCapacity()) {
-            return false;
+        // 2. Deny if this request would go over capacity
+        if (usage.getPermits() + permits > policy.getCapacity()) {
+            return decision(policy, false, usage, now);
         }
 
-        // 4. Log this request into the window
+        // 3. Log this request, weighted by its cost, into the window
         slidingWindowRepository.save(
                 SlidingWindowRecord.builder()
                         .keyId(keyId)
                         .requestTime(now)
+                        .permits(permits)
                         .build()
         );
-        return true;
+        return decision(policy, true, usage.plus(permits, now), now);
+    }
+
+    /**
+     * Batch variant: one usage query and one batched insert for the whole batch. All
+     * requests share the same timestamp, so each is allowed while the window still
+     * has room for its cost, exactly as serial processing would.
+     */
+    @Override
+    public RateLimitDecision[] decideAll(UsageRecord record, Policy policy, long[] permits) {
+        RateLimitDecision[] decisions = new RateLimitDecision[permits.length];
+        if (permits.length == 0) {
+            return decisions;
+        }
+        long now = System.currentTimeMillis();
+        long windowStart = now - policy.getWindowSeconds() * 1000L;
+        String keyId = record.getKeyId();
+
+        WindowUsage usage = slidingWindowRepository.usageInWindow(keyId, windowStart);
+
+        List<SlidingWindowRecord> rows = new ArrayList<>();
+        for (int i = 0; i < permits.length; i++) {
+            boolean allowed = usage.getPermits() + permits[i] <= policy.getCapacity();
+            if (allowed) {
+                usage = usage.plus(permits[i], now);
+                rows.add(SlidingWindowRecord.builder()
+                        .keyId(keyId)
+                        .requestTime(now)
+                        .permits(permits[i])
+                        .build());
+            }
+            decisions[i] = decision(policy, allowed, usage, now);
+        }
+        if (!rows.isEmpty()) {
+            slidingWindowRepository.saveAll(rows);
+        }
+        return decisions;
+    }
+
+    @Override
+    public void debit(UsageRecord record, Policy policy, long permits) {
+        slidingWindowRepository.save(
+                SlidingWindowRecord.builder()
+                        .keyId(record.getKeyId())
+                        .requestTime(System.currentTimeMillis())
+                        .permits(permits)
+                        .build()
+        );
+    }
+
+    /**
+     * Decision from the window's usage after this request. The window is fully free
+     * once its newest request expires; a denied request may succeed as soon as the
+     * oldest one does (exact for single-permit requests).
+     */
+    static RateLimitDecision decision(Policy policy, boolean allowed, WindowUsage usage, long now) {
+        long windowMs = policy.getWindowSeconds() * 1000L;
+        long newest = usage.getNewestRequestTime();
+        long reset = newest >= 0 ? Math.max(0, newest + windowMs - now) : 0;
+        long retryAfter = 0;
+        if (!allowed) {
+            retryAfter = usage.getOldestRequestTime() >= 0
+                    ? Math.max(0, usage.getOldestRequestTime() + windowMs - now)
+                    : -1; // costs more than the whole window
+        }
+        return RateLimitDecision.builder()
+                .allowed(allowed)
+                .limit(policy.getCapacity())
+                .remaining(Math.max(0, policy.getCapacity() - usage.getPermits()))
+                .resetMillis(reset)
+                .retryAfterMillis(retryAfter)
+                .build();
     }
 }
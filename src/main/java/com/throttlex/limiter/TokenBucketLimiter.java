@@ -1,6 +1,7 @@
 package com.throttlex.limiter;
 
 import com.throttlex.model.Policy;
+import com.throttlex.model.RateLimitDecision;
 import com.throttlex.model.UsageRecord;
 import org.springframework.stereotype.Component;
 
@@ -8,7 +9,48 @@ import org.springframework.stereotype.Component;
 public class TokenBucketLimiter implements Limiter {
 
     @Override
-    public boolean allow(UsageRecord record, Policy policy) {
+    public RateLimitDecision decide(UsageRecord record, Policy policy, long permits) {
+        // 1-2. Refill
+        long currentTokens = refill(record, policy);
+
+        // 3. Consume (a request costing more than the whole bucket can never pass)
+        boolean allowed = currentTokens >= permits;
+        if (allowed) {
+            currentTokens -= permits;
+            record.setTokens(currentTokens);
+        }
+
+        // 4. Reset / retry times from the same state: time until the missing tokens refill
+        long capacity = policy.getCapacity();
+        long sinceRefill = System.currentTimeMillis() - record.getLastRefill();
+        return RateLimitDecision.builder()
+                .allowed(allowed)
+                .limit(capacity)
+                .remaining(Math.max(0, currentTokens))
+                .resetMillis(refillMillis(capacity - currentTokens, policy.getRefillRate(), sinceRefill))
+                .retryAfterMillis(allowed ? 0
+                        : refillMillis(Math.min(permits, capacity) - currentTokens, policy.getRefillRate(), sinceRefill))
+                .build();
+    }
+
+    @Override
+    public void debit(UsageRecord record, Policy policy, long permits) {
+        // Tokens may go negative; refill has to pay the debt off before the next admission
+        record.setTokens(refill(record, policy) - permits);
+    }
+
+    /** Milliseconds until {@code missing} more tokens have refilled; -1 if the bucket never refills. */
+    private static long refillMillis(long missing, long refillRate, long sinceRefill) {
+        if (missing <= 0) {
+            return 0;
+        }
+        if (refillRate <= 0) {
+            return -1;
+        }
+        return Math.max(0, (missing * 1000L + refillRate - 1) / refillRate - sinceRefill);
+    }
+
+    private long refill(UsageRecord record, Policy policy) {
         long now = System.currentTimeMillis();
         long lastRefill = record.getLastRefill();
         long capacity = policy.getCapacity();
@@ -30,15 +72,8 @@ public class TokenBucketLimiter implements Limiter {
             // Drift-safe approach: update lastRefill based on tokens actually added
             long newLastRefill = lastRefill + (tokensToAdd * 1000L) / refillRate;
             record.setLastRefill(newLastRefill);
-        }
-
-        // 3. Consume
-        if (currentTokens >= 1) {
-            currentTokens--;
             record.setTokens(currentTokens);
-            return true;
         }
-
-        return false;
+        return currentTokens;
     }
 }
@@ -0,0 +1,178 @@
+package com.throttlex.middleware;
+
+import com.throttlex.config.ThrottleXProperties;
+import com.throttlex.model.RequestPriority;
+import com.throttlex.service.PolicyService;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Global, priority-aware admission control that runs before any per-key check.
+ *
+ * Node pressure is the worst of three signals, each normalised so that 1.0
+ * means "at the configured limit": requests in flight (read inline), threads
+ * waiting for a Hikari connection and mean decision latency (both sampled in
+ * the background). Each tier is shed once pressure reaches its threshold, so
+ * the lowest tiers go first. The per-request path only reads pre-built arrays
+ * and volatile fields: constant time, no allocation.
+ */
+@Slf4j
+@Component
+public class AdmissionController {
+
+    private static final RequestPriority[] TIERS = RequestPriority.values();
+
+    private final boolean enabled;
+    private final int maxInFlight;
+    private final double maxPoolPending;
+    private final double latencyTargetNanos;
+    private final String priorityHeader;
+    private final String apiKeyHeader;
+    private final int apiKeyTier;
+    private final int defaultTier;
+    private final String[] routePrefixes; // longest first
+    private final int[] routeTiers;
+    private final double[] shedAt;         // indexed by tier ordinal
+    private final HikariDataSource hikari;
+    private final PolicyService policyService;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final LongAdder latencyCount = new LongAdder();
+    private final LongAdder[] shed = new LongAdder[TIERS.length];
+    private volatile double sampledPressure;
+
+    public AdmissionController(ThrottleXProperties properties, DataSource dataSource, PolicyService policyService) {
+        ThrottleXProperties.Shedding cfg = properties.getShedding();
+        this.enabled = cfg.isEnabled();
+        this.maxInFlight = Math.max(1, cfg.getMaxInFlight());
+        this.maxPoolPending = Math.max(1, cfg.getMaxPoolPending());
+        this.latencyTargetNanos = Math.max(1, cfg.getLatencyTargetMs()) * 1_000_000.0;
+        this.priorityHeader = cfg.getPriorityHeader();
+        this.apiKeyHeader = properties.getComposite().getApiKeyHeader();
+        this.apiKeyTier = cfg.getApiKeyPriority().ordinal();
+        this.defaultTier = cfg.getDefaultPriority().ordinal();
+
+        this.routePrefixes = cfg.getRoutes().keySet().stream()
+                .sorted(Comparator.comparingInt(String::length).reversed())
+                .toArray(String[]::new);
+        this.routeTiers = new int[routePrefixes.length];
+        for (int i = 0; i < routePrefixes.length; i++) {
+            routeTiers[i] = cfg.getRoutes().get(routePrefixes[i]).ordinal();
+        }
+
+        this.shedAt = new double[TIERS.length];
+        for (RequestPriority tier : TIERS) {
+            shedAt[tier.ordinal()] = cfg.getShedAt().getOrDefault(tier, Double.POSITIVE_INFINITY);
+            shed[tier.ordinal()] = new LongAdder();
+        }
+        this.hikari = unwrapHikari(dataSource);
+        this.policyService = policyService;
+    }
+
+    /**
+     * Tier ordinal for a request: explicit header (only if configured), then longest
+     * route prefix, then key class. An API key raises the tier only if it has a policy.
+     */
+    public int classify(HttpServletRequest req) {
+        if (priorityHeader != null) {
+            String header = req.getHeader(priorityHeader);
+            if (header != null) {
+                for (RequestPriority tier : TIERS) {
+                    if (tier.name().equalsIgnoreCase(header)) {
+                        return tier.ordinal();
+                    }
+                }
+            }
+        }
+        String uri = req.getRequestURI();
+        for (int i = 0; i < routePrefixes.length; i++) {
+            if (uri.startsWith(routePrefixes[i])) {
+                return routeTiers[i];
+            }
+        }
+        String apiKey = req.getHeader(apiKeyHeader);
+        return (apiKey != null && policyService.isKnownApiKey(apiKey)) ? apiKeyTier : defaultTier;
+    }
+
+    /**
+     * Admit or shed a request of the given tier. An admitted request counts as in
+     * flight until {@link #release} is called.
+     */
+    public boolean tryAdmit(int tier) {
+        int current = inFlight.incrementAndGet();
+        if (enabled) {
+            double pressure = Math.max(sampledPressure, (double) current / maxInFlight);
+            if (pressure >= shedAt[tier]) {
+                inFlight.decrementAndGet();
+                shed[tier].increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /** Feed the latency signal with how long one rate-limit decision took. */
+    public void recordDecisionLatency(long nanos) {
+        latencyNanos.add(nanos);
+        latencyCount.increment();
+    }
+
+    /** Refresh the sampled (pool and latency) part of node pressure. */
+    @Scheduled(fixedDelayString = "${throttlex.shedding.sample-interval-ms:100}")
+    public void sample() {
+        double poolPressure = 0;
+        if (hikari != null) {
+            HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+            if (pool != null) {
+                poolPressure = pool.getThreadsAwaitingConnection() / maxPoolPending;
+            }
+        }
+        long count = latencyCount.sumThenReset();
+        long nanos = latencyNanos.sumThenReset();
+        double latencyPressure = (count == 0) ? 0 : (nanos / (double) count) / latencyTargetNanos;
+        sampledPressure = Math.max(poolPressure, latencyPressure);
+    }
+
+    /** Current pressure and shed counts, for admin status. */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        int current = inFlight.get();
+        status.put("enabled", enabled);
+        status.put("inFlight", current);
+        status.put("pressure", Math.max(sampledPressure, (double) current / maxInFlight));
+        Map<String, Long> shedByTier = new LinkedHashMap<>();
+        for (RequestPriority tier : TIERS) {
+            shedByTier.put(tier.name(), shed[tier.ordinal()].sum());
+        }
+        status.put("shed", shedByTier);
+        return status;
+    }
+
+    private static HikariDataSource unwrapHikari(DataSource dataSource) {
+        try {
+            if (dataSource != null && dataSource.isWrapperFor(HikariDataSource.class)) {
+                return dataSource.unwrap(HikariDataSource.class);
+            }
+        } catch (SQLException e) {
+            log.debug("Could not unwrap Hikari data source: {}", e.getMessage());
+        }
+        return null;
+    }
+}
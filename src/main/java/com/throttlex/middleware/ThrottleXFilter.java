@@ -1,19 +1,30 @@
 package com.throttlex.middleware;
 
+import com.throttlex.config.ThrottleXProperties;
+import com.throttlex.model.CheckRequest;
+import com.throttlex.model.RateLimitDecision;
+import com.throttlex.service.HeavyHitterService;
 import com.throttlex.service.ThrottleXService;
 import javax.servlet.*;
 import javax.servlet.http.*;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.springframework.web.filter.OncePerRequestFilter;
 
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class ThrottleXFilter extends OncePerRequestFilter {
 
     private final ThrottleXService service;
+    private final AdmissionController admissionController;
+    private final HeavyHitterService heavyHitterService;
+    private final ThrottleXProperties properties;
 
     @Override
     protected void doFilterInternal(HttpServletRequest req,
@@ -21,14 +32,134 @@ public class ThrottleXFilter extends OncePerRequestFilter {
                                     FilterChain chain)
                                     throws ServletException, IOException {
 
-        String key = service.extractKey(req);
-
-        if (!service.check(key)) {
-            res.setStatus(429);
-            res.getWriter().write("Too Many Requests (ThrottleX)");
+        // Node-level shedding first: cheaper than any per-key check
+        if (!admissionController.tryAdmit(admissionController.classify(req))) {
+            res.setStatus(503);
+            res.setHeader("Retry-After", "1");
+            res.getWriter().write("Service Overloaded (ThrottleX)");
             return;
         }
 
-        chain.doFilter(req, res);
+        boolean async = false;
+        try {
+            CheckRequest request = service.extractRequest(req);
+            heavyHitterService.record(request.getKey());
+
+            long start = System.nanoTime();
+            RateLimitDecision decision;
+            if (asyncServlet(req)) {
+                CompletableFuture<RateLimitDecision> pending = service.checkAsync(request, req.getRequestURI());
+                if (!pending.isDone()) {
+                    // Release the container thread while the database decides
+                    resumeWhenDecided(req, res, request, pending, start);
+                    async = true;
+                    return;
+                }
+                decision = pending.join();
+            } else {
+                decision = service.check(request, req.getRequestURI());
+            }
+            admissionController.recordDecisionLatency(System.nanoTime() - start);
+            writeHeaders(res, decision);
+
+            if (!decision.isAllowed()) {
+                res.setStatus(429);
+                res.getWriter().write("Too Many Requests (ThrottleX)");
+                return;
+            }
+
+            chain.doFilter(req, res);
+            service.settleCost(request, req);
+        } finally {
+            if (!async) {
+                admissionController.release();
+            }
+        }
+    }
+
+    private boolean asyncServlet(HttpServletRequest req) {
+        ThrottleXProperties.Decision decision = properties.getDecision();
+        return decision.isAsyncServlet() && decision.getLatencyBudgetMs() > 0 && req.isAsyncSupported();
+    }
+
+    /**
+     * Put the request in async mode and finish it from the thread that completes the
+     * decision: a rejection is written and completed right there; an admitted request
+     * is dispatched back to the container, which skips this filter on the ASYNC
+     * dispatch and serves it. The admission slot is held until the exchange completes.
+     */
+    private void resumeWhenDecided(HttpServletRequest req, HttpServletResponse res, CheckRequest request,
+                                   CompletableFuture<RateLimitDecision> pending, long start) {
+        AsyncContext ctx = req.startAsync(req, res);
+        AtomicBoolean admitted = new AtomicBoolean();
+        ctx.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                try {
+                    if (admitted.get()) {
+                        service.settleCost(request, req);
+                    }
+                } finally {
+                    admissionController.release();
+                }
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+                // The application went async again; stay registered for the final completion
+                event.getAsyncContext().addListener(this);
+            }
+        });
+        pending.whenComplete((decision, e) -> {
+            admissionController.recordDecisionLatency(System.nanoTime() - start);
+            if (decision != null && decision.isAllowed()) {
+                writeHeaders(res, decision);
+                admitted.set(true);
+                ctx.dispatch();
+                return;
+            }
+            try {
+                if (decision == null) {
+                    res.setStatus(500);
+                } else {
+                    writeHeaders(res, decision);
+                    res.setStatus(429);
+                    res.getWriter().write("Too Many Requests (ThrottleX)");
+                }
+            } catch (IOException ex) {
+                log.debug("Writing rejection for key {} failed: {}", request.getKey(), ex.getMessage());
+            } finally {
+                ctx.complete();
+            }
+        });
+    }
+
+    /**
+     * RateLimit-Limit / -Remaining / -Reset on every checked response, and Retry-After
+     * on rejections, all in whole seconds rounded up, so clients can back off precisely.
+     */
+    private static void writeHeaders(HttpServletResponse res, RateLimitDecision decision) {
+        if (decision.hasState()) {
+            res.setHeader("RateLimit-Limit", Long.toString(decision.getLimit()));
+            res.setHeader("RateLimit-Remaining", Long.toString(decision.getRemaining()));
+            res.setHeader("RateLimit-Reset", Long.toString(ceilSeconds(decision.getResetMillis())));
+        }
+        if (!decision.isAllowed()) {
+            // Unknown -> 1s, so a client never retries in a tight loop
+            long retryAfter = decision.getRetryAfterMillis() < 0 ? 1 : ceilSeconds(decision.getRetryAfterMillis());
+            res.setHeader("Retry-After", Long.toString(Math.max(1, retryAfter)));
+        }
+    }
+
+    private static long ceilSeconds(long millis) {
+        return (Math.max(0, millis) + 999) / 1000;
     }
 }
@@ -0,0 +1,39 @@
+package com.throttlex.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * The identities a single request is limited by. {@code key} (client IP) is
+ * always set; the other levels are only populated when composite policies are enabled.
+ * {@code cost} is the number of permits the request takes from every level.
+ */
+@Value
+@Builder
+public class CheckRequest {
+    String key;
+    String route;
+    String apiKey;
+    String tenant;
+    @Builder.Default
+    long cost = 1;
+
+    public static CheckRequest of(String key) {
+        return CheckRequest.builder().key(key).build();
+    }
+
+    public boolean hasUpperLevels() {
+        return apiKey != null || tenant != null || route != null;
+    }
+
+    /**
+     * Requests with the same signature hit the same usage rows and may be decided
+     * together. Cost is not part of it: a batch carries each request's own cost.
+     */
+    public String signature() {
+        if (!hasUpperLevels()) {
+            return key;
+        }
+        return key + '|' + apiKey + '|' + tenant + '|' + route;
+    }
+}
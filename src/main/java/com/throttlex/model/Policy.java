@@ -5,6 +5,11 @@ import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -16,8 +21,51 @@ public class Policy {
     private long refillRate; // tokens per second
     private long windowSeconds; // for sliding window
 
+    private long quotaLimit; // requests per quota period (0 = no quota)
+    private QuotaPeriod quotaPeriod; // calendar period the quota resets on
+    private String quotaTimezone; // zone used for the period boundary, e.g. "UTC"
+
+    private FailureMode failureMode; // what to do while the database is unavailable (null = LOCAL)
+
     public enum PolicyType {
         TOKEN_BUCKET,
         SLIDING_WINDOW
     }
+
+    public enum FailureMode {
+        LOCAL,  // decide from node-local in-memory state, reconcile later
+        OPEN,   // allow everything
+        CLOSED  // deny everything
+    }
+
+    public enum QuotaPeriod {
+        DAILY,
+        MONTHLY;
+
+        /** Epoch millis at which the period containing {@code now} started in {@code zone}. */
+        public long periodStart(long now, ZoneId zone) {
+            LocalDate date = ZonedDateTime.ofInstant(Instant.ofEpochMilli(now), zone).toLocalDate();
+            LocalDate start = (this == DAILY) ? date : date.withDayOfMonth(1);
+            return start.atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+
+        /** Epoch millis at which the period starting at {@code periodStart} ends in {@code zone}. */
+        public long periodEnd(long periodStart, ZoneId zone) {
+            ZonedDateTime start = ZonedDateTime.ofInstant(Instant.ofEpochMilli(periodStart), zone);
+            ZonedDateTime end = (this == DAILY) ? start.plusDays(1) : start.plusMonths(1);
+            return end.toInstant().toEpochMilli();
+        }
+    }
+
+    public FailureMode effectiveFailureMode() {
+        return (failureMode != null) ? failureMode : FailureMode.LOCAL;
+    }
+
+    public boolean hasQuota() {
+        return quotaLimit > 0 && quotaPeriod != null;
+    }
+
+    public ZoneId quotaZone() {
+        return (quotaTimezone != null) ? ZoneId.of(quotaTimezone) : ZoneId.of("UTC");
+    }
 }
@@ -36,4 +36,18 @@ public class PolicyEntity {
 
     @Column(name = "window_seconds", nullable = false)
     private long windowSeconds; // sliding window size in seconds
+
+    @Column(name = "quota_limit", nullable = false)
+    private long quotaLimit; // requests per quota period (0 = no quota)
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "quota_period")
+    private Policy.QuotaPeriod quotaPeriod; // DAILY | MONTHLY
+
+    @Column(name = "quota_timezone")
+    private String quotaTimezone; // zone for the period reset, defaults to UTC
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "failure_mode")
+    private Policy.FailureMode failureMode; // LOCAL | OPEN | CLOSED while the DB is degraded
 }
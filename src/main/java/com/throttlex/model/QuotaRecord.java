@@ -0,0 +1,31 @@
+package com.throttlex.model;
+
+import javax.persistence.*;
+import lombok.*;
+
+@Entity
+@Table(
+    name = "throttlex_quota",
+    uniqueConstraints = {
+        @UniqueConstraint(name = "uk_quota_key_period", columnNames = {"key_id", "period_start"})
+    }
+)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class QuotaRecord {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "key_id", nullable = false)
+    private String keyId;
+
+    @Column(name = "period_start", nullable = false)
+    private long periodStart; // epoch millis, start of the calendar period
+
+    @Column(nullable = false)
+    private long used; // requests reconciled into this period so far
+}
@@ -0,0 +1,86 @@
+package com.throttlex.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.ZoneId;
+
+/**
+ * Outcome of a rate-limit check, with the state the limiter already had in hand
+ * to tell the client where it stands. Times are relative to the decision, in
+ * milliseconds; {@code limit < 0} means nothing is known (the decision was made
+ * without limiter state, e.g. a fail-open fallback).
+ */
+@Value
+@Builder
+public class RateLimitDecision {
+    boolean allowed;
+
+    /** Permits the deciding level allows (capacity). */
+    long limit;
+
+    /** Permits left after this decision. */
+    long remaining;
+
+    /** Until the limit is fully available again. */
+    long resetMillis;
+
+    /** Until this request would be admitted; 0 when allowed, -1 when unknown. */
+    long retryAfterMillis;
+
+    public static RateLimitDecision of(boolean allowed) {
+        return RateLimitDecision.builder()
+                .allowed(allowed)
+                .limit(-1)
+                .retryAfterMillis(allowed ? 0 : -1)
+                .build();
+    }
+
+    /** A denial by the key's calendar quota: nothing is left until the next period starts. */
+    public static RateLimitDecision quotaExceeded(Policy policy, long now) {
+        ZoneId zone = policy.quotaZone();
+        long periodEnd = policy.getQuotaPeriod().periodEnd(policy.getQuotaPeriod().periodStart(now, zone), zone);
+        return RateLimitDecision.builder()
+                .allowed(false)
+                .limit(policy.getQuotaLimit())
+                .remaining(0)
+                .resetMillis(periodEnd - now)
+                .retryAfterMillis(periodEnd - now)
+                .build();
+    }
+
+    /**
+     * A denial by the key's calendar quota while this node's admissions are still
+     * being written back: quota is left, so the client may retry shortly.
+     */
+    public static RateLimitDecision quotaBacklogged(Policy policy, long retryAfterMillis) {
+        return RateLimitDecision.builder()
+                .allowed(false)
+                .limit(policy.getQuotaLimit())
+                .remaining(0)
+                .resetMillis(retryAfterMillis)
+                .retryAfterMillis(retryAfterMillis)
+                .build();
+    }
+
+    public boolean hasState() {
+        return limit >= 0;
+    }
+
+    /**
+     * Of two levels' decisions, the one the client should be told about: a denial
+     * over an admission, otherwise the level with fewer permits left.
+     */
+    public RateLimitDecision tighter(RateLimitDecision other) {
+        if (allowed != other.allowed) {
+            return allowed ? other : this;
+        }
+        if (!allowed) {
+            return retryAfterMillis >= other.retryAfterMillis ? this : other;
+        }
+        if (remaining != other.remaining) {
+            return remaining < other.remaining ? this : other;
+        }
+        return resetMillis >= other.resetMillis ? this : other;
+    }
+}
@@ -0,0 +1,12 @@
+package com.throttlex.model;
+
+/**
+ * Admission tiers for global load shedding, most important first.
+ * Lower tiers are shed earlier as node pressure rises.
+ */
+public enum RequestPriority {
+    CRITICAL,
+    HIGH,
+    NORMAL,
+    LOW
+}
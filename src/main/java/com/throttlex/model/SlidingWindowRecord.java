@@ -1,29 +1,22 @@
 package com.throttlex.model;
 
-import javax.persistence.*;
 import lombok.*;
 
-
-@Entity
-@Table(
-    name = "throttlex_sw_log",
-    indexes = {
-        @Index(name = "idx_sw_key_time", columnList = "key_id, request_time")
-    }
-)
+/**
+ * One allowed request in the sliding-window log. Stored in the time-partitioned
+ * {@code throttlex_sw_log_<n>} tables by {@link com.throttlex.persistence.SlidingWindowRepository}.
+ */
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 public class SlidingWindowRecord {
 
-    @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private Long id;
-
-    @Column(name = "key_id", nullable = false)
     private String keyId;
 
-    @Column(name = "request_time", nullable = false)
     private long requestTime; // epoch millis
+
+    /** Permits the request consumed (its cost). */
+    @Builder.Default
+    private long permits = 1;
 }
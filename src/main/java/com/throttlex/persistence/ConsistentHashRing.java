@@ -0,0 +1,130 @@
+package com.throttlex.persistence;
+
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring with virtual nodes.
+ *
+ * Every node takes {@code virtualNodes} points on a 64-bit ring. A key belongs
+ * to the node of the first point at or after the key's hash, wrapping around.
+ * A new point takes over only the arc between the preceding point and itself,
+ * so adding a node moves about {@code 1 / nodes} of the keys, all of them to
+ * the new node. Immutable: changes return a new ring, so lookups need no lock.
+ */
+public class ConsistentHashRing {
+
+    private final NavigableMap<Long, String> points;
+    private final int virtualNodes;
+
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes must be >= 1");
+        }
+        this.virtualNodes = virtualNodes;
+        this.points = new TreeMap<>();
+        for (String node : nodes) {
+            for (long point : pointsOf(node)) {
+                points.putIfAbsent(point, node);
+            }
+        }
+    }
+
+    private ConsistentHashRing(NavigableMap<Long, String> points, int virtualNodes) {
+        this.points = points;
+        this.virtualNodes = virtualNodes;
+    }
+
+    /** The node owning {@code key}. */
+    public String nodeFor(String key) {
+        return ownerOf(hash(key));
+    }
+
+    /** The node owning ring position {@code hash}. */
+    public String ownerOf(long hash) {
+        Map.Entry<Long, String> owner = points.ceilingEntry(hash);
+        return (owner != null ? owner : points.firstEntry()).getValue();
+    }
+
+    public Set<String> nodes() {
+        return Collections.unmodifiableSet(new HashSet<>(points.values()));
+    }
+
+    /** Points currently owned by {@code node}. */
+    public int pointCount(String node) {
+        return (int) points.values().stream().filter(node::equals).count();
+    }
+
+    /** The points {@code node} takes (whether or not it is on this ring yet), in ring order. */
+    public long[] pointsOf(String node) {
+        long[] out = new long[virtualNodes];
+        for (int i = 0; i < virtualNodes; i++) {
+            out[i] = hash(node + "#" + i);
+        }
+        Arrays.sort(out);
+        return out;
+    }
+
+    /** The arc a point at {@code point} owns, or would take over if it were added now. */
+    public Arc arcOf(long point) {
+        Long previous = points.lowerKey(point);
+        if (previous == null) {
+            previous = points.isEmpty() ? point : points.lastKey();
+        }
+        return new Arc(previous, point);
+    }
+
+    /** This ring plus one point of {@code node}; unchanged if the point is taken. */
+    public ConsistentHashRing withPoint(long point, String node) {
+        if (points.containsKey(point)) {
+            return this;
+        }
+        NavigableMap<Long, String> next = new TreeMap<>(points);
+        next.put(point, node);
+        return new ConsistentHashRing(next, virtualNodes);
+    }
+
+    /** 64-bit FNV-1a of the UTF-8 bytes, with the Murmur3 finalizer for an even spread. */
+    public static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Ring positions in {@code (start, end]}, wrapping past {@code Long.MAX_VALUE}
+     * when {@code start >= end}.
+     */
+    @Value
+    public static class Arc {
+        long start;
+        long end;
+
+        public boolean contains(long hash) {
+            return start < end
+                    ? hash > start && hash <= end
+                    : hash > start || hash <= end;
+        }
+
+        public boolean wraps() {
+            return start >= end;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.throttlex.persistence;
+
+import com.throttlex.model.UsageRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/** Usage records in the primary datasource's {@code throttlex_usage} table (unsharded mode). */
+@Repository
+@ConditionalOnProperty(prefix = "throttlex.sharding", name = "enabled", havingValue = "false", matchIfMissing = true)
+public class JpaUsageStore implements UsageStore {
+
+    private final UsageRepository usageRepository;
+    private final TransactionTemplate transactions;
+
+    public JpaUsageStore(UsageRepository usageRepository, PlatformTransactionManager transactionManager) {
+        this.usageRepository = usageRepository;
+        this.transactions = new TransactionTemplate(transactionManager);
+    }
+
+    /** A transaction on the primary datasource, joining the caller's if there is one. */
+    @Override
+    public <T> T inTransaction(String key, Supplier<T> work) {
+        return transactions.execute(status -> work.get());
+    }
+
+    @Override
+    public Optional<UsageRecord> findByKeyId(String keyId) {
+        return usageRepository.findByKeyId(keyId);
+    }
+
+    @Override
+    public List<UsageRecord> findByKeyIdInOrderByKeyIdAsc(Collection<String> keyIds) {
+        return usageRepository.findByKeyIdInOrderByKeyIdAsc(keyIds);
+    }
+
+    @Override
+    public UsageRecord save(UsageRecord record) {
+        return usageRepository.save(record);
+    }
+
+    @Override
+    public void saveAll(List<UsageRecord> records) {
+        usageRepository.saveAll(records);
+    }
+
+    @Override
+    public List<UsageRecord> findAll() {
+        return usageRepository.findAll();
+    }
+}
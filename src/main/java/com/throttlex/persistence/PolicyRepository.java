@@ -2,8 +2,12 @@ package com.throttlex.persistence;
 
 import com.throttlex.model.PolicyEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -11,7 +15,13 @@ public interface PolicyRepository extends JpaRepository<PolicyEntity, Long> {
 
     Optional<PolicyEntity> findByPolicyKey(String policyKey);
 
+    /** Batched lookup for all levels of a composite check. */
+    List<PolicyEntity> findByPolicyKeyIn(Collection<String> policyKeys);
+
     boolean existsByPolicyKey(String policyKey);
 
+    @Query("SELECT p.policyKey FROM PolicyEntity p WHERE p.policyKey LIKE CONCAT(:prefix, '%')")
+    List<String> findPolicyKeysStartingWith(@Param("prefix") String prefix);
+
     void deleteByPolicyKey(String policyKey);
 }
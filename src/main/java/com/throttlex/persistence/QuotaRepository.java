@@ -0,0 +1,35 @@
+package com.throttlex.persistence;
+
+import com.throttlex.model.QuotaRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+@Repository
+public interface QuotaRepository extends JpaRepository<QuotaRecord, Long> {
+
+    /**
+     * Current period total as stored in the database (scalar read, bypasses the persistence context).
+     */
+    @Query("SELECT q.used FROM QuotaRecord q WHERE q.keyId = :keyId AND q.periodStart = :periodStart")
+    Optional<Long> findUsed(@Param("keyId") String keyId, @Param("periodStart") long periodStart);
+
+    /**
+     * Add a batch of locally counted requests to a period counter in one statement.
+     * Returns the number of rows updated (0 if the period row does not exist yet).
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE QuotaRecord q SET q.used = q.used + :delta WHERE q.keyId = :keyId AND q.periodStart = :periodStart")
+    int addUsage(@Param("keyId") String keyId, @Param("periodStart") long periodStart, @Param("delta") long delta);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM QuotaRecord q WHERE q.keyId = :keyId")
+    void deleteByKeyId(@Param("keyId") String keyId);
+}
@@ -0,0 +1,199 @@
+package com.throttlex.persistence;
+
+import com.throttlex.config.ThrottleXProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Maps keys to the {@link StateShard} holding their usage and sliding-window state.
+ *
+ * Unsharded (the default), every key maps to the primary datasource. Sharded,
+ * keys are placed on a {@link ConsistentHashRing} of the configured shards.
+ * Work on a key's state runs through {@link #route}, which holds the shard
+ * assignment stable until it returns; a rebalance step pauses routing for the
+ * keys of the one arc it moves, and only for them (see {@link #exclusively}).
+ */
+@Slf4j
+@Component
+public class ShardRouter {
+
+    private final StateShard primary;
+    private final ReadWriteLock moving = new ReentrantReadWriteLock();
+
+    /** The arc being moved, if any; set and cleared under the write lock of {@link #moving}. */
+    private volatile Pause pause;
+
+    private volatile Map<String, StateShard> shards;
+    private volatile ConsistentHashRing ring;
+
+    @Autowired
+    public ShardRouter(JdbcTemplate jdbcTemplate, ThrottleXProperties properties) {
+        ThrottleXProperties.Sharding config = properties.getSharding();
+        if (!config.isEnabled()) {
+            this.primary = StateShard.primary(jdbcTemplate);
+            this.shards = Map.of(primary.getName(), primary);
+            return;
+        }
+        if (config.getShards().isEmpty()) {
+            throw new IllegalArgumentException("throttlex.sharding.enabled needs at least one shard");
+        }
+        if (properties.getComposite().isEnabled()) {
+            // A composite check locks several keys in one transaction, which shards cannot span
+            throw new IllegalArgumentException("throttlex.sharding cannot be combined with throttlex.composite");
+        }
+        this.primary = null;
+        Map<String, StateShard> opened = new LinkedHashMap<>();
+        for (ThrottleXProperties.Shard shard : config.getShards()) {
+            if (opened.containsKey(shard.getName())) {
+                throw new IllegalArgumentException("Duplicate shard name: " + shard.getName());
+            }
+            opened.put(shard.getName(), StateShard.open(shard));
+        }
+        this.shards = Collections.unmodifiableMap(opened);
+        this.ring = new ConsistentHashRing(opened.keySet(), config.getVirtualNodes());
+        log.info("Sharding usage state over {} with {} virtual nodes each", opened.keySet(), config.getVirtualNodes());
+    }
+
+    private ShardRouter(JdbcTemplate jdbcTemplate) {
+        this.primary = StateShard.primary(jdbcTemplate);
+        this.shards = Map.of(primary.getName(), primary);
+    }
+
+    /** A router sending every key to {@code jdbcTemplate}'s datasource. */
+    public static ShardRouter unsharded(JdbcTemplate jdbcTemplate) {
+        return new ShardRouter(jdbcTemplate);
+    }
+
+    public boolean isSharded() {
+        return primary == null;
+    }
+
+    /** The shard holding {@code key}'s state. Stable only inside {@link #route}. */
+    public StateShard shardFor(String key) {
+        return primary != null ? primary : shards.get(ring.nodeFor(key));
+    }
+
+    /**
+     * Run {@code work} on the shard of {@code key}; no rebalance step moves the key meanwhile.
+     * A key inside the arc being moved waits until it has moved.
+     */
+    public <T> T route(String key, Function<StateShard, T> work) {
+        if (primary != null) {
+            return work.apply(primary);
+        }
+        long hash = ConsistentHashRing.hash(key);
+        while (true) {
+            Pause current;
+            moving.readLock().lock();
+            try {
+                current = pause;
+                if (current == null || !current.arc.contains(hash)) {
+                    return work.apply(shardFor(key));
+                }
+            } finally {
+                moving.readLock().unlock();
+            }
+            current.await();
+        }
+    }
+
+    /** Every shard, including one being filled by a rebalance. */
+    public Collection<StateShard> shards() {
+        return shards.values();
+    }
+
+    public StateShard shard(String name) {
+        return shards.get(name);
+    }
+
+    public ConsistentHashRing ring() {
+        return ring;
+    }
+
+    /**
+     * Register a shard that is not on the ring yet: it gets no keys until its
+     * points are added one by one with {@link #addPoint}.
+     */
+    public synchronized void register(StateShard shard) {
+        if (!isSharded()) {
+            throw new IllegalArgumentException("Sharding is not enabled (throttlex.sharding.enabled)");
+        }
+        if (shards.containsKey(shard.getName())) {
+            throw new IllegalArgumentException("Shard already exists: " + shard.getName());
+        }
+        Map<String, StateShard> next = new LinkedHashMap<>(shards);
+        next.put(shard.getName(), shard);
+        this.shards = Collections.unmodifiableMap(next);
+    }
+
+    /**
+     * Run {@code work} while no {@link #route} on a key in {@code arc} is in flight and
+     * none can start. Other keys are only held while routes already in flight finish
+     * (one transaction each), not for the duration of {@code work}.
+     */
+    public void exclusively(ConsistentHashRing.Arc arc, Runnable work) {
+        Pause started = new Pause(arc);
+        setPause(started);
+        try {
+            work.run();
+        } finally {
+            setPause(null);
+            started.done.countDown();
+        }
+    }
+
+    private void setPause(Pause next) {
+        moving.writeLock().lock();
+        try {
+            pause = next;
+        } finally {
+            moving.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Hand the arc ending at {@code point} to {@code node}. Call within {@link #exclusively}
+     * for that arc, unless {@code node} already owns it.
+     */
+    public void addPoint(long point, String node) {
+        ring = ring.withPoint(point, node);
+    }
+
+    @PreDestroy
+    public void close() {
+        List<StateShard> open = new ArrayList<>(shards.values());
+        open.forEach(StateShard::close);
+    }
+
+    private static final class Pause {
+        private final ConsistentHashRing.Arc arc;
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private Pause(ConsistentHashRing.Arc arc) {
+            this.arc = arc;
+        }
+
+        private void await() {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while the key's arc was being moved", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.throttlex.persistence;
+
+import com.throttlex.model.UsageRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Usage records spread over the shards of {@link ShardRouter}, one
+ * {@code throttlex_usage} table per shard. Rows carry the key's ring position
+ * ({@code key_hash}) so a rebalance can select the keys of one arc by index.
+ */
+@Repository
+@ConditionalOnProperty(prefix = "throttlex.sharding", name = "enabled", havingValue = "true")
+public class ShardedUsageStore implements UsageStore {
+
+    private static final String COLUMNS = "id, key_id, tokens, last_refill";
+
+    private static final RowMapper<UsageRecord> ROW = (rs, n) -> UsageRecord.builder()
+            .id(rs.getLong(1))
+            .keyId(rs.getString(2))
+            .tokens(rs.getLong(3))
+            .lastRefill(rs.getLong(4))
+            .build();
+
+    private final ShardRouter router;
+
+    public ShardedUsageStore(ShardRouter router) {
+        this.router = router;
+    }
+
+    @PostConstruct
+    void createTables() {
+        router.shards().forEach(this::createTable);
+    }
+
+    /** Create the usage table on {@code shard} if missing. Shards must not share a schema with the primary. */
+    public void createTable(StateShard shard) {
+        shard.getJdbcTemplate().execute("CREATE TABLE IF NOT EXISTS throttlex_usage ("
+                + "id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                + "key_id VARCHAR(255) NOT NULL, "
+                + "key_hash BIGINT NOT NULL, "
+                + "tokens BIGINT NOT NULL, "
+                + "last_refill BIGINT NOT NULL, "
+                + "UNIQUE KEY uk_usage_key_id (key_id), "
+                + "INDEX idx_usage_key_hash (key_hash))");
+    }
+
+    /** One local transaction on the key's shard while the router holds the key's assignment; nothing runs on the primary. */
+    @Override
+    public <T> T inTransaction(String key, Supplier<T> work) {
+        return router.route(key, shard -> shard.getTransactions().execute(status -> work.get()));
+    }
+
+    @Override
+    public Optional<UsageRecord> findByKeyId(String keyId) {
+        List<UsageRecord> rows = router.shardFor(keyId).getJdbcTemplate().query(
+                "SELECT " + COLUMNS + " FROM throttlex_usage WHERE key_id = ? FOR UPDATE", ROW, keyId);
+        return rows.stream().findFirst();
+    }
+
+    @Override
+    public List<UsageRecord> findByKeyIdInOrderByKeyIdAsc(Collection<String> keyIds) {
+        List<UsageRecord> out = new ArrayList<>(keyIds.size());
+        Map<StateShard, List<String>> byShard = keyIds.stream().collect(Collectors.groupingBy(router::shardFor));
+        byShard.forEach((shard, keys) -> out.addAll(shard.getJdbcTemplate().query(
+                "SELECT " + COLUMNS + " FROM throttlex_usage WHERE key_id IN (" + placeholders(keys.size())
+                        + ") ORDER BY key_id FOR UPDATE", ROW, keys.toArray())));
+        out.sort(Comparator.comparing(UsageRecord::getKeyId));
+        return out;
+    }
+
+    @Override
+    public UsageRecord save(UsageRecord record) {
+        StateShard shard = router.shardFor(record.getKeyId());
+        if (record.getId() != null) {
+            shard.getJdbcTemplate().update("UPDATE throttlex_usage SET tokens = ?, last_refill = ? WHERE key_id = ?",
+                    record.getTokens(), record.getLastRefill(), record.getKeyId());
+            return record;
+        }
+        KeyHolder id = new GeneratedKeyHolder();
+        shard.getJdbcTemplate().update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "INSERT INTO throttlex_usage (key_id, key_hash, tokens, last_refill) VALUES (?, ?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS);
+            ps.setString(1, record.getKeyId());
+            ps.setLong(2, ConsistentHashRing.hash(record.getKeyId()));
+            ps.setLong(3, record.getTokens());
+            ps.setLong(4, record.getLastRefill());
+            return ps;
+        }, id);
+        record.setId(id.getKey() != null ? id.getKey().longValue() : null);
+        return record;
+    }
+
+    @Override
+    public void saveAll(List<UsageRecord> records) {
+        records.forEach(this::save);
+    }
+
+    @Override
+    public List<UsageRecord> findAll() {
+        List<UsageRecord> all = new ArrayList<>();
+        for (StateShard shard : router.shards()) {
+            all.addAll(shard.getJdbcTemplate().query("SELECT " + COLUMNS + " FROM throttlex_usage", ROW));
+        }
+        return all;
+    }
+
+    // ─── Rebalancing ────────────────────────────────────────────────────────────
+
+    /** The usage records on {@code shard} whose keys fall in {@code arc}. */
+    public List<UsageRecord> findInArc(StateShard shard, ConsistentHashRing.Arc arc) {
+        return shard.getJdbcTemplate().query(
+                "SELECT " + COLUMNS + " FROM throttlex_usage WHERE " + arcCondition(arc) + " ORDER BY key_id",
+                ROW, arc.getStart(), arc.getEnd());
+    }
+
+    /** Copy usage records onto {@code shard} as they are, in one batch. */
+    public void insertAll(StateShard shard, List<UsageRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        List<Object[]> args = new ArrayList<>(records.size());
+        for (UsageRecord r : records) {
+            args.add(new Object[]{r.getKeyId(), ConsistentHashRing.hash(r.getKeyId()), r.getTokens(), r.getLastRefill()});
+        }
+        shard.getJdbcTemplate().batchUpdate(
+                "INSERT INTO throttlex_usage (key_id, key_hash, tokens, last_refill) VALUES (?, ?, ?, ?)", args);
+    }
+
+    /** Remove the usage records of {@code arc} from a shard that no longer owns it. */
+    public int deleteInArc(StateShard shard, ConsistentHashRing.Arc arc) {
+        return shard.getJdbcTemplate().update(
+                "DELETE FROM throttlex_usage WHERE " + arcCondition(arc), arc.getStart(), arc.getEnd());
+    }
+
+    public long count(StateShard shard) {
+        Long count = shard.getJdbcTemplate().queryForObject("SELECT COUNT(*) FROM throttlex_usage", Long.class);
+        return count == null ? 0 : count;
+    }
+
+    /** Rows in {@code arc}; binds start then end. */
+    private static String arcCondition(ConsistentHashRing.Arc arc) {
+        return arc.wraps()
+                ? "(key_hash > ? OR key_hash <= ?)"
+                : "key_hash > ? AND key_hash <= ?";
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
@@ -1,25 +1,287 @@
 package com.throttlex.persistence;
 
+import com.throttlex.config.ThrottleXProperties;
 import com.throttlex.model.SlidingWindowRecord;
-import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
-import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.repository.query.Param;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
 
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Sliding-window request log, partitioned by time into rotating tables
+ * {@code throttlex_sw_log_0 … throttlex_sw_log_{n-1}}.
+ *
+ * Time is cut into buckets of {@code partitionSeconds}; bucket {@code b} is
+ * written to table {@code b mod n}. Counts only scan the tables of buckets
+ * overlapping the window, and expiry is a periodic {@code TRUNCATE} of the one
+ * table no live bucket maps to, so requests never delete rows. Every query
+ * still filters on {@code request_time}, which keeps counts exact even if a
+ * truncate was missed.
+ *
+ * With sharding, each shard has its own set of tables and a key's rows live on
+ * the shard {@link ShardRouter} maps it to.
+ */
+@Slf4j
 @Repository
-public interface SlidingWindowRepository extends JpaRepository<SlidingWindowRecord, Long> {
+public class SlidingWindowRepository {
+
+    static final String TABLE_PREFIX = "throttlex_sw_log_";
+
+    /** The single, unpartitioned log table of earlier versions, on the primary. */
+    static final String LEGACY_TABLE = "throttlex_sw_log";
+
+    /** Rows copied or deleted per statement when moving keys between shards. */
+    private static final int MOVE_CHUNK = 500;
+
+    private final ShardRouter router;
+    private final JdbcTemplate primary;
+    private final long partitionMs;
+    private final int partitions;
+
+    /** Per shard, the bucket each table was last emptied for; -1 = not since startup. */
+    private final Map<String, long[]> truncatedFor = new HashMap<>();
+
+    public SlidingWindowRepository(JdbcTemplate jdbcTemplate, ThrottleXProperties properties) {
+        this(ShardRouter.unsharded(jdbcTemplate), jdbcTemplate, properties);
+    }
+
+    /** @param primary The primary datasource, checked once for the legacy log table; may be null. */
+    @Autowired
+    public SlidingWindowRepository(ShardRouter router, JdbcTemplate primary, ThrottleXProperties properties) {
+        ThrottleXProperties.SlidingWindow config = properties.getSlidingWindow();
+        if (config.getPartitions() < 3 || config.getPartitionSeconds() <= 0) {
+            throw new IllegalArgumentException("throttlex.sliding-window needs partitions >= 3 and partition-seconds > 0");
+        }
+        this.router = router;
+        this.primary = primary;
+        this.partitionMs = config.getPartitionSeconds() * 1000L;
+        this.partitions = config.getPartitions();
+    }
+
+    @PostConstruct
+    void createPartitions() {
+        router.shards().forEach(this::createPartitions);
+        if (primary != null) {
+            migrateLegacyLog(System.currentTimeMillis());
+        }
+    }
 
     /**
-     * Count the number of requests for a key within the current window.
+     * Move the requests of the legacy {@code throttlex_sw_log} table that are still
+     * inside the longest supported window into the partitions, then drop it. Older
+     * rows can no longer count towards any window and are dropped with the table.
+     * Nodes starting together may both copy before one drops; the duplicates only
+     * make windows stricter until they age out.
      */
-    @Query("SELECT COUNT(r) FROM SlidingWindowRecord r WHERE r.keyId = :keyId AND r.requestTime >= :windowStart")
-    long countRequestsInWindow(@Param("keyId") String keyId, @Param("windowStart") long windowStart);
+    void migrateLegacyLog(long now) {
+        long since = now - (partitions - 2) * partitionMs;
+        List<SlidingWindowRecord> batch = new ArrayList<>(MOVE_CHUNK);
+        long[] moved = {0};
+        try {
+            primary.query("SELECT key_id, request_time FROM " + LEGACY_TABLE + " WHERE request_time >= ?", rs -> {
+                batch.add(SlidingWindowRecord.builder()
+                        .keyId(rs.getString(1))
+                        .requestTime(rs.getLong(2))
+                        .build());
+                if (batch.size() == MOVE_CHUNK) {
+                    saveAll(batch);
+                    moved[0] += batch.size();
+                    batch.clear();
+                }
+            }, since);
+        } catch (BadSqlGrammarException e) {
+            return; // no legacy table: nothing to migrate
+        }
+        saveAll(batch);
+        moved[0] += batch.size();
+        primary.execute("DROP TABLE IF EXISTS " + LEGACY_TABLE);
+        log.info("Moved {} recent requests from legacy table {} into its partitions and dropped it", moved[0], LEGACY_TABLE);
+    }
+
+    /** Create the partition tables on {@code shard} if missing. */
+    public void createPartitions(StateShard shard) {
+        for (int slot = 0; slot < partitions; slot++) {
+            shard.getJdbcTemplate().execute("CREATE TABLE IF NOT EXISTS " + table(slot) + " ("
+                    + "id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                    + "key_id VARCHAR(255) NOT NULL, "
+                    + "request_time BIGINT NOT NULL, "
+                    + "permits BIGINT NOT NULL DEFAULT 1, "
+                    + "INDEX idx_" + table(slot) + "_key_time (key_id, request_time))");
+        }
+    }
 
     /**
-     * Delete expired entries outside the window to keep the table lean.
+     * Permits a key consumed within the current window (each request weighs its
+     * cost), and when the oldest and newest of those requests were made, in one query. Only the
+     * partitions overlapping {@code [windowStart, now]} are read.
      */
-    @Modifying
-    @Query("DELETE FROM SlidingWindowRecord r WHERE r.keyId = :keyId AND r.requestTime < :windowStart")
-    void deleteExpired(@Param("keyId") String keyId, @Param("windowStart") long windowStart);
+    public WindowUsage usageInWindow(String keyId, long windowStart) {
+        long current = bucket(System.currentTimeMillis());
+        long first = Math.max(bucket(windowStart), current - (partitions - 2));
+
+        StringBuilder sql = new StringBuilder("SELECT COALESCE(SUM(permits), 0), MIN(request_time), MAX(request_time) FROM (");
+        List<Object> args = new ArrayList<>();
+        for (long b = first; b <= current; b++) {
+            if (b > first) {
+                sql.append(" UNION ALL ");
+            }
+            sql.append("SELECT permits, request_time FROM ").append(table(slot(b)))
+                    .append(" WHERE key_id = ? AND request_time >= ?");
+            args.add(keyId);
+            args.add(windowStart);
+        }
+        sql.append(") w");
+        WindowUsage usage = router.shardFor(keyId).getJdbcTemplate().queryForObject(sql.toString(), (rs, n) -> {
+            long permits = rs.getLong(1);
+            long oldest = rs.getLong(2);
+            if (rs.wasNull()) {
+                return WindowUsage.EMPTY;
+            }
+            return new WindowUsage(permits, oldest, rs.getLong(3));
+        }, args.toArray());
+        return usage == null ? WindowUsage.EMPTY : usage;
+    }
+
+    /** Log one allowed request into the partition of its timestamp. */
+    public SlidingWindowRecord save(SlidingWindowRecord record) {
+        router.shardFor(record.getKeyId()).getJdbcTemplate().update(
+                "INSERT INTO " + table(slot(bucket(record.getRequestTime())))
+                + " (key_id, request_time, permits) VALUES (?, ?, ?)",
+                record.getKeyId(), record.getRequestTime(), record.getPermits());
+        return record;
+    }
+
+    /** Log a batch of allowed requests with one batched insert per partition touched. */
+    public void saveAll(List<SlidingWindowRecord> records) {
+        records.stream()
+                .collect(Collectors.groupingBy(r -> router.shardFor(r.getKeyId())))
+                .forEach((shard, onShard) -> onShard.stream()
+                        .collect(Collectors.groupingBy(r -> slot(bucket(r.getRequestTime()))))
+                        .forEach((slot, rows) -> {
+                            List<Object[]> args = new ArrayList<>(rows.size());
+                            for (SlidingWindowRecord r : rows) {
+                                args.add(new Object[]{r.getKeyId(), r.getRequestTime(), r.getPermits()});
+                            }
+                            shard.getJdbcTemplate().batchUpdate("INSERT INTO " + table(slot)
+                                    + " (key_id, request_time, permits) VALUES (?, ?, ?)", args);
+                        }));
+    }
+
+    /**
+     * Copy the logged requests of {@code keys} from one shard's tables to the same
+     * tables on another, for a rebalance.
+     * @return rows copied.
+     */
+    public int copyKeys(StateShard from, StateShard to, List<String> keys) {
+        int copied = 0;
+        for (int slot = 0; slot < partitions; slot++) {
+            for (List<String> chunk : chunks(keys)) {
+                List<Object[]> rows = from.getJdbcTemplate().query(
+                        "SELECT key_id, request_time, permits FROM " + table(slot)
+                                + " WHERE key_id IN (" + placeholders(chunk.size()) + ")",
+                        (rs, n) -> new Object[]{rs.getString(1), rs.getLong(2), rs.getLong(3)},
+                        chunk.toArray());
+                if (!rows.isEmpty()) {
+                    to.getJdbcTemplate().batchUpdate("INSERT INTO " + table(slot)
+                            + " (key_id, request_time, permits) VALUES (?, ?, ?)", rows);
+                    copied += rows.size();
+                }
+            }
+        }
+        return copied;
+    }
+
+    /** Remove the logged requests of {@code keys} from a shard that no longer owns them. */
+    public void deleteKeys(StateShard shard, List<String> keys) {
+        for (int slot = 0; slot < partitions; slot++) {
+            for (List<String> chunk : chunks(keys)) {
+                shard.getJdbcTemplate().update("DELETE FROM " + table(slot)
+                        + " WHERE key_id IN (" + placeholders(chunk.size()) + ")", chunk.toArray());
+            }
+        }
+    }
+
+    /** Empty the partition that is due for reuse. Runs several times per partition span. */
+    @Scheduled(fixedDelayString = "#{${throttlex.sliding-window.partition-seconds:300} * 250}")
+    public void dropExpiredPartitions() {
+        dropExpiredPartitions(System.currentTimeMillis());
+    }
+
+    /**
+     * Truncate the table of the next bucket: it only holds rows from
+     * {@code partitions - 1} buckets ago, older than any supported window. Skipped
+     * close to the bucket boundary so a slow truncate never races the first writes
+     * of the new bucket; the next run then leaves those stale rows to be filtered out.
+     */
+    synchronized void dropExpiredPartitions(long now) {
+        long next = bucket(now) + 1;
+        int slot = slot(next);
+        if (next * partitionMs - now < partitionMs / 10) {
+            return;
+        }
+        for (StateShard shard : router.shards()) {
+            long[] truncated = truncatedFor.computeIfAbsent(shard.getName(), s -> {
+                long[] none = new long[partitions];
+                Arrays.fill(none, -1);
+                return none;
+            });
+            if (truncated[slot] == next) {
+                continue;
+            }
+            shard.getJdbcTemplate().execute("TRUNCATE TABLE " + table(slot));
+            truncated[slot] = next;
+            log.debug("Truncated sliding-window partition {} on {} ahead of bucket {}", table(slot), shard, next);
+        }
+    }
+
+    /** Permits in a window and the times of its oldest and newest requests (-1 if the window is empty). */
+    @Value
+    public static class WindowUsage {
+        public static final WindowUsage EMPTY = new WindowUsage(0, -1, -1);
+
+        long permits;
+        long oldestRequestTime;
+        long newestRequestTime;
+
+        /** The usage after one more request of {@code permits} at {@code time}. */
+        public WindowUsage plus(long permits, long time) {
+            return new WindowUsage(this.permits + permits, oldestRequestTime >= 0 ? oldestRequestTime : time, time);
+        }
+    }
+
+    private long bucket(long epochMillis) {
+        return epochMillis / partitionMs;
+    }
+
+    private int slot(long bucket) {
+        return (int) Math.floorMod(bucket, (long) partitions);
+    }
+
+    private static String table(int slot) {
+        return TABLE_PREFIX + slot;
+    }
+
+    private static List<List<String>> chunks(List<String> keys) {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i += MOVE_CHUNK) {
+            chunks.add(keys.subList(i, Math.min(keys.size(), i + MOVE_CHUNK)));
+        }
+        return chunks;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
 }
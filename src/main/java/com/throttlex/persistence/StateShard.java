@@ -0,0 +1,75 @@
+package com.throttlex.persistence;
+
+import com.throttlex.config.ThrottleXProperties;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.Getter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+/**
+ * One database holding a share of the usage and sliding-window state, with its
+ * own connection pool and transaction manager. Deliberately not Spring beans, so
+ * they never stand in for the primary datasource or JPA transaction manager.
+ */
+@Getter
+public class StateShard implements AutoCloseable {
+
+    private final String name;
+
+    /** The shard's own pool; null for the primary, whose pool Spring Boot owns. */
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    /** Transactions on this shard only; null for the primary, whose transactions Spring manages. */
+    private final TransactionTemplate transactions;
+
+    private StateShard(String name, DataSource dataSource, JdbcTemplate jdbcTemplate,
+                       TransactionTemplate transactions) {
+        this.name = name;
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactions = transactions;
+    }
+
+    /** The primary datasource, for unsharded mode. */
+    static StateShard primary(JdbcTemplate jdbcTemplate) {
+        return new StateShard("primary", null, jdbcTemplate, null);
+    }
+
+    /** Open the pool of a configured shard. */
+    public static StateShard open(ThrottleXProperties.Shard config) {
+        if (config.getName() == null || config.getName().isBlank() || config.getUrl() == null) {
+            throw new IllegalArgumentException("A shard needs a name and a url");
+        }
+        HikariConfig pool = new HikariConfig();
+        pool.setPoolName("throttlex-shard-" + config.getName());
+        pool.setJdbcUrl(config.getUrl());
+        pool.setUsername(config.getUsername());
+        pool.setPassword(config.getPassword());
+        pool.setMaximumPoolSize(config.getMaximumPoolSize());
+        pool.setConnectionTimeout(config.getConnectionTimeoutMs());
+        return of(config.getName(), new HikariDataSource(pool));
+    }
+
+    /** A shard over an existing datasource. */
+    public static StateShard of(String name, DataSource dataSource) {
+        return new StateShard(name, dataSource, new JdbcTemplate(dataSource),
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+    }
+
+    @Override
+    public void close() {
+        if (dataSource instanceof HikariDataSource) {
+            ((HikariDataSource) dataSource).close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
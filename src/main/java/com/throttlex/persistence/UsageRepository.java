@@ -6,7 +6,8 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import javax.persistence.LockModeType;
 
-
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -19,6 +20,13 @@ public interface UsageRepository extends JpaRepository<UsageRecord, Long> {
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     Optional<UsageRecord> findByKeyId(String keyId);
 
+    /**
+     * Lock the usage records of every level of a composite check in one statement.
+     * Rows are locked in key order, so overlapping composite checks cannot deadlock.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<UsageRecord> findByKeyIdInOrderByKeyIdAsc(Collection<String> keyIds);
+
     /**
      * Atomic decrement — reduces DB round-trips under burst traffic.
      * Returns the number of rows updated (1 if successful, 0 if no tokens left).
@@ -0,0 +1,34 @@
+package com.throttlex.persistence;
+
+import com.throttlex.model.UsageRecord;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Storage of {@link UsageRecord}s: the JPA table on the primary datasource
+ * ({@link JpaUsageStore}), or spread over shards ({@link ShardedUsageStore}).
+ */
+public interface UsageStore {
+
+    /**
+     * Run {@code work} in one transaction on the database holding {@code key}'s state,
+     * including its sliding-window log. Nothing else is opened around it: read policies
+     * before calling, so a sharded check never also holds a primary connection.
+     */
+    <T> T inTransaction(String key, Supplier<T> work);
+
+    /** The usage record of {@code keyId}, locked for the rest of the transaction. */
+    Optional<UsageRecord> findByKeyId(String keyId);
+
+    /** The usage records of {@code keyIds}, locked in key order so overlapping calls cannot deadlock. */
+    List<UsageRecord> findByKeyIdInOrderByKeyIdAsc(Collection<String> keyIds);
+
+    UsageRecord save(UsageRecord record);
+
+    void saveAll(List<UsageRecord> records);
+
+    List<UsageRecord> findAll();
+}
@@ -0,0 +1,92 @@
+package com.throttlex.service;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Consecutive-failure circuit breaker around the database decision path.
+ *
+ * CLOSED: calls go through. After {@code failureThreshold} consecutive
+ * failures (errors or blown latency budgets) it trips to OPEN and calls are
+ * short-circuited for {@code openDurationMs}. Then a single probe is let through
+ * (HALF_OPEN): success closes the breaker, failure re-opens it.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openDurationMs;
+    private final List<Runnable> onClose = new ArrayList<>();
+
+    @Getter
+    private volatile State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    private final AtomicLong trips = new AtomicLong();
+    private final AtomicLong shortCircuited = new AtomicLong();
+
+    public CircuitBreaker(int failureThreshold, long openDurationMs) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDurationMs = openDurationMs;
+    }
+
+    /** Register a callback run (on the caller's thread) each time the breaker closes again. */
+    public synchronized void onClose(Runnable callback) {
+        onClose.add(callback);
+    }
+
+    /** Whether the protected call may be attempted now. */
+    public boolean allowRequest() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMs) {
+                state = State.HALF_OPEN; // this caller is the probe
+                return true;
+            }
+        }
+        shortCircuited.incrementAndGet();
+        return false;
+    }
+
+    public void recordSuccess() {
+        List<Runnable> callbacks = null;
+        synchronized (this) {
+            consecutiveFailures = 0;
+            if (state != State.CLOSED) {
+                state = State.CLOSED;
+                callbacks = new ArrayList<>(onClose);
+            }
+        }
+        if (callbacks != null) {
+            callbacks.forEach(Runnable::run);
+        }
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            trips.incrementAndGet();
+        }
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public long getTrips() {
+        return trips.get();
+    }
+
+    public long getShortCircuited() {
+        return shortCircuited.get();
+    }
+}
@@ -0,0 +1,53 @@
+package com.throttlex.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory frequency sketch. Estimates never undercount; they overcount by at
+ * most {@code e/width * total} with probability {@code 1 - e^-depth}. Updates are
+ * lock-free, so it can be fed from every request thread.
+ */
+public class CountMinSketch {
+
+    private final int width;
+    private final int depth;
+    private final AtomicLongArray counts;
+
+    public CountMinSketch(int width, int depth) {
+        this.width = Math.max(1, width);
+        this.depth = Math.max(1, depth);
+        this.counts = new AtomicLongArray(this.width * this.depth);
+    }
+
+    /** Add one occurrence of {@code key} and return its new estimate. */
+    public long add(String key) {
+        int h = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counts.incrementAndGet(index(row, h)));
+        }
+        return estimate;
+    }
+
+    public long estimate(String key) {
+        int h = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counts.get(index(row, h)));
+        }
+        return estimate;
+    }
+
+    public void clear() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    private int index(int row, int hash) {
+        // Independent-ish hash per row: remix the key hash with a per-row odd constant
+        int h = (hash ^ (hash >>> 16)) * (0x9E3779B1 + 2 * row);
+        h ^= h >>> 15;
+        return row * width + Math.floorMod(h, width);
+    }
+}
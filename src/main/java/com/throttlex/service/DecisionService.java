@@ -0,0 +1,279 @@
+package com.throttlex.service;
+
+import com.throttlex.limiter.CompositeLimiter;
+import com.throttlex.limiter.LimiterFactory;
+import com.throttlex.model.CheckRequest;
+import com.throttlex.model.Policy;
+import com.throttlex.model.RateLimitDecision;
+import com.throttlex.model.UsageRecord;
+import com.throttlex.persistence.UsageStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The database-backed part of a rate-limit check: policy lookup, quota
+ * reservation, locked read-modify-write of the usage record. Every method is
+ * one transaction on the database holding the key's state ({@link UsageStore#inTransaction});
+ * policies are read before it starts, so with sharding no primary connection is
+ * held across the shard's transaction. {@link ThrottleXService} decides when to call it.
+ */
+@Service
+@RequiredArgsConstructor
+public class DecisionService {
+
+    private final UsageStore usageStore;
+    private final LimiterFactory limiterFactory;
+    private final PolicyService policyService;
+    private final QuotaService quotaService;
+    private final CompositeLimiter compositeLimiter;
+
+    /**
+     * Decide concurrent requests with the same levels in a single transaction: one
+     * policy lookup, one locked read and one write-back of the usage state.
+     * Decisions are handed out in arrival order and match serial processing.
+     * @param costs Permits each request takes; calendar quota is always one per request.
+     */
+    public RateLimitDecision[] decideBatch(CheckRequest request, long[] costs) {
+        String key = request.getKey();
+        Policy policy;
+        if (request.hasUpperLevels()) {
+            List<Policy> levels = policyService.resolveLevels(request);
+            if (levels.size() > 1) {
+                return usageStore.inTransaction(key, () -> decideComposite(levels, costs));
+            }
+            policy = levels.get(0);
+        } else {
+            policy = policyService.resolve(key);
+        }
+        return usageStore.inTransaction(key, () -> decideLocked(key, policy, costs));
+    }
+
+    private RateLimitDecision[] decideLocked(String key, Policy policy, long[] costs) {
+        int count = costs.length;
+
+        // Calendar quota first, so a quota denial never spends a rate-limit token
+        long now = System.currentTimeMillis();
+        boolean[] quotaOk = new boolean[count];
+        long[] passing = new long[count];
+        int n = 0;
+        RateLimitDecision[] decisions = new RateLimitDecision[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                quotaOk[i] = quotaService.tryAcquire(key, policy);
+                if (quotaOk[i]) {
+                    passing[n++] = costs[i];
+                }
+            }
+
+            UsageRecord record = loadOrCreate(key, policy);
+            RateLimitDecision[] rate = limiterFactory.decideAll(policy.getType().name(), record, policy, Arrays.copyOf(passing, n));
+
+            for (int i = 0, j = 0; i < count; i++) {
+                if (!quotaOk[i]) {
+                    decisions[i] = quotaService.denial(key, policy, now);
+                    continue;
+                }
+                decisions[i] = rate[j++];
+                if (!decisions[i].isAllowed()) {
+                    quotaService.release(key, policy);
+                }
+            }
+
+            // Persist updated token state (relevant for token-bucket)
+            usageStore.save(record);
+        } catch (RuntimeException e) {
+            // Nothing was admitted: hand back every reservation not already released
+            for (int i = 0; i < count; i++) {
+                if (quotaOk[i] && (decisions[i] == null || decisions[i].isAllowed())) {
+                    quotaService.release(key, policy);
+                }
+            }
+            throw e;
+        }
+        return decisions;
+    }
+
+    /**
+     * All levels are checked and consumed together: quota on every level is reserved
+     * per request and handed back if any level denies, and the rate levels go through
+     * {@link CompositeLimiter} on usage records locked by a single query.
+     */
+    private RateLimitDecision[] decideComposite(List<Policy> levels, long[] costs) {
+        int count = costs.length;
+        long now = System.currentTimeMillis();
+        Policy[] quotaDenied = new Policy[count];
+        long[] passing = new long[count];
+        int n = 0;
+        int reserved = 0;
+        RateLimitDecision[] decisions = new RateLimitDecision[count];
+        try {
+            for (; reserved < count; reserved++) {
+                quotaDenied[reserved] = acquireQuota(levels);
+                if (quotaDenied[reserved] == null) {
+                    passing[n++] = costs[reserved];
+                }
+            }
+
+            List<UsageRecord> records = loadOrCreate(levels);
+            RateLimitDecision[] rate = compositeLimiter.decideAll(records, levels, Arrays.copyOf(passing, n));
+
+            for (int i = 0, j = 0; i < count; i++) {
+                if (quotaDenied[i] != null) {
+                    decisions[i] = quotaService.denial(quotaDenied[i].getKey(), quotaDenied[i], now);
+                    continue;
+                }
+                decisions[i] = rate[j++];
+                if (!decisions[i].isAllowed()) {
+                    levels.forEach(p -> quotaService.release(p.getKey(), p));
+                }
+            }
+            usageStore.saveAll(records);
+        } catch (RuntimeException e) {
+            for (int i = 0; i < reserved; i++) {
+                if (quotaDenied[i] == null && (decisions[i] == null || decisions[i].isAllowed())) {
+                    levels.forEach(p -> quotaService.release(p.getKey(), p));
+                }
+            }
+            throw e;
+        }
+        return decisions;
+    }
+
+    /**
+     * Reserve quota on every level, or on none of them.
+     * @return null on success, else the level whose quota refused the request.
+     */
+    private Policy acquireQuota(List<Policy> levels) {
+        int l = 0;
+        try {
+            for (; l < levels.size(); l++) {
+                Policy policy = levels.get(l);
+                if (!quotaService.tryAcquire(policy.getKey(), policy)) {
+                    releaseQuota(levels, l);
+                    return policy;
+                }
+            }
+        } catch (RuntimeException e) {
+            releaseQuota(levels, l);
+            throw e;
+        }
+        return null;
+    }
+
+    private void releaseQuota(List<Policy> levels, int count) {
+        for (int k = 0; k < count; k++) {
+            quotaService.release(levels.get(k).getKey(), levels.get(k));
+        }
+    }
+
+    /**
+     * Apply {@code consumed} permits that were admitted locally while the database
+     * was unavailable, as one debit: a single token-bucket update or one sliding-window
+     * row carrying all the permits.
+     */
+    public void reconcile(String key, long consumed) {
+        Policy policy = policyService.resolve(key);
+        usageStore.inTransaction(key, () -> {
+            UsageRecord record = loadOrCreate(key, policy);
+            // More than a full bucket/window is never owed, so the debt stays bounded
+            limiterFactory.debit(policy.getType().name(), record, policy, Math.min(consumed, policy.getCapacity()));
+            return usageStore.save(record);
+        });
+    }
+
+    /**
+     * Charge {@code permits} more to every level of an already admitted request, for
+     * cost only known once it was served. Applied unconditionally, so the levels may
+     * go into debt that later requests pay off.
+     */
+    public void debit(CheckRequest request, long permits) {
+        List<Policy> levels = request.hasUpperLevels()
+                ? policyService.resolveLevels(request)
+                : List.of(policyService.resolve(request.getKey()));
+        usageStore.inTransaction(request.getKey(), () -> {
+            List<UsageRecord> records = loadOrCreate(levels);
+            for (int l = 0; l < levels.size(); l++) {
+                Policy policy = levels.get(l);
+                limiterFactory.debit(policy.getType().name(), records.get(l), policy, permits);
+            }
+            usageStore.saveAll(records);
+            return records;
+        });
+    }
+
+    /**
+     * Take up to {@code requested} tokens from a token-bucket key in one transaction,
+     * to be handed out locally by a promoted hot key's lease.
+     * @return tokens actually granted (0 when the bucket is empty), or -1 if the key's
+     *         policy is no longer a token bucket and the lease must be given up.
+     */
+    public long leaseTokens(String key, long requested) {
+        Policy policy = policyService.resolve(key);
+        if (policy.getType() != Policy.PolicyType.TOKEN_BUCKET) {
+            return -1;
+        }
+        return usageStore.inTransaction(key, () -> {
+            UsageRecord record = loadOrCreate(key, policy);
+            long granted = 0;
+            for (boolean taken : limiterFactory.allowAll(policy.getType().name(), record, policy, (int) requested)) {
+                if (taken) {
+                    granted++;
+                }
+            }
+            usageStore.save(record);
+            return granted;
+        });
+    }
+
+    /** Give unused leased tokens back to the shared bucket (never above capacity). */
+    public void returnLease(String key, long unused) {
+        Policy policy = policyService.resolve(key);
+        usageStore.inTransaction(key, () -> {
+            UsageRecord record = loadOrCreate(key, policy);
+            record.setTokens(Math.min(policy.getCapacity(), record.getTokens() + unused));
+            return usageStore.save(record);
+        });
+    }
+
+    /** Resolve (or create) the usage records of all levels, locked in one statement, in level order. */
+    private List<UsageRecord> loadOrCreate(List<Policy> levels) {
+        List<String> keys = new ArrayList<>(levels.size());
+        levels.forEach(p -> keys.add(p.getKey()));
+        Map<String, UsageRecord> byKey = new HashMap<>();
+        for (UsageRecord r : usageStore.findByKeyIdInOrderByKeyIdAsc(keys)) {
+            byKey.put(r.getKeyId(), r);
+        }
+        List<UsageRecord> records = new ArrayList<>(levels.size());
+        for (Policy policy : levels) {
+            UsageRecord record = byKey.get(policy.getKey());
+            if (record == null) {
+                record = new UsageRecord();
+                record.setKeyId(policy.getKey());
+                record.setTokens(policy.getCapacity());
+                record.setLastRefill(System.currentTimeMillis());
+                record = usageStore.save(record);
+                byKey.put(policy.getKey(), record);
+            }
+            records.add(record);
+        }
+        return records;
+    }
+
+    /** Resolve (or create) the usage record for this key, locked for the rest of the transaction. */
+    private UsageRecord loadOrCreate(String key, Policy policy) {
+        return usageStore.findByKeyId(key)
+                .orElseGet(() -> {
+                    UsageRecord r = new UsageRecord();
+                    r.setKeyId(key);
+                    r.setTokens(policy.getCapacity());
+                    r.setLastRefill(System.currentTimeMillis());
+                    return usageStore.save(r);
+                });
+    }
+}
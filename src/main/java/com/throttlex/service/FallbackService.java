@@ -0,0 +1,105 @@
+package com.throttlex.service;
+
+import com.throttlex.config.ThrottleXProperties;
+import com.throttlex.limiter.InMemoryLimiter;
+import com.throttlex.model.Policy;
+import com.throttlex.model.RateLimitDecision;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides requests while the database path is unavailable, according to each
+ * key's last known policy and its {@link Policy.FailureMode}. Permits admitted
+ * from local state are remembered per key and debited from the persisted state
+ * once the database is back.
+ */
+@Slf4j
+@Service
+public class FallbackService {
+
+    private final PolicyService policyService;
+    private final DecisionService decisionService;
+    private final CircuitBreaker circuitBreaker;
+    private final InMemoryLimiter localLimiter;
+
+    /** Permits admitted locally per key; only ever changed atomically per entry, so none is lost. */
+    private final ConcurrentMap<String, Long> unreconciled = new ConcurrentHashMap<>();
+    private final LongAdder decisions = new LongAdder();
+
+    public FallbackService(PolicyService policyService,
+                           DecisionService decisionService,
+                           CircuitBreaker circuitBreaker,
+                           ThrottleXProperties properties) {
+        this.policyService = policyService;
+        this.decisionService = decisionService;
+        this.circuitBreaker = circuitBreaker;
+        this.localLimiter = new InMemoryLimiter(properties.getFallback().getMaxLocalKeys(), Duration.ofMinutes(10));
+    }
+
+    public RateLimitDecision decide(String key, long cost) {
+        decisions.increment();
+        Policy policy = policyService.lastKnown(key);
+        switch (policy.effectiveFailureMode()) {
+            case OPEN:
+                return RateLimitDecision.of(true);
+            case CLOSED:
+                return RateLimitDecision.of(false);
+            default:
+                RateLimitDecision decision = localLimiter.decide(key, policy, cost);
+                if (decision.isAllowed()) {
+                    unreconciled.merge(key, cost, Long::sum);
+                }
+                return decision;
+        }
+    }
+
+    /**
+     * Debit locally admitted requests from the persisted state, one transaction per key.
+     * A key's count is taken out of the map atomically, so admissions made meanwhile
+     * start a new entry; keys that fail go back for the next attempt. Local state is
+     * dropped afterwards so the next outage starts from fresh buckets, unless the
+     * breaker opened again meanwhile and the local buckets are in use.
+     */
+    public void reconcile() {
+        int keys = 0;
+        for (String key : unreconciled.keySet()) {
+            Long consumed = unreconciled.remove(key);
+            if (consumed == null) {
+                continue;
+            }
+            try {
+                decisionService.reconcile(key, consumed);
+                keys++;
+            } catch (RuntimeException e) {
+                unreconciled.merge(key, consumed, Long::sum);
+                log.warn("Reconciling {} local admissions for key {} failed: {}",
+                        consumed, key, e.getMessage());
+                return;
+            }
+        }
+        if (circuitBreaker.getState() == CircuitBreaker.State.CLOSED) {
+            localLimiter.clear();
+        }
+        if (keys > 0) {
+            log.info("Reconciled local admissions for {} keys", keys);
+        }
+    }
+
+    public void reset(String key) {
+        unreconciled.remove(key);
+        localLimiter.reset(key);
+    }
+
+    public long getDecisions() {
+        return decisions.sum();
+    }
+
+    public int getUnreconciledKeys() {
+        return unreconciled.size();
+    }
+}
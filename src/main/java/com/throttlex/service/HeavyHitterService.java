@@ -0,0 +1,103 @@
+package com.throttlex.service;
+
+import com.throttlex.config.ThrottleXProperties;
+import lombok.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming heavy-hitter detection over the request path, in fixed memory.
+ *
+ * Every request updates a lock-free Count-Min Sketch and one of several
+ * independently locked Space-Saving trackers (chosen by key hash, so threads
+ * rarely contend). Once per window the trackers are merged into a top-K list,
+ * each count tightened to the smaller of the two estimates, and the rates are
+ * handed to {@link HotKeyService} for promotion.
+ */
+@Service
+public class HeavyHitterService {
+
+    private final HotKeyService hotKeyService;
+    private final boolean enabled;
+    private final int topK;
+    private final CountMinSketch sketch;
+    private final SpaceSaving[] stripes;
+
+    private volatile List<HeavyHitter> snapshot = List.of();
+    private long windowStart = System.currentTimeMillis();
+
+    public HeavyHitterService(HotKeyService hotKeyService, ThrottleXProperties properties) {
+        ThrottleXProperties.HotKeys cfg = properties.getHotKeys();
+        this.hotKeyService = hotKeyService;
+        this.enabled = cfg.isEnabled();
+        this.topK = Math.max(1, cfg.getTopK());
+        this.sketch = new CountMinSketch(cfg.getSketchWidth(), cfg.getSketchDepth());
+        int stripeCount = Math.max(1, cfg.getStripes());
+        this.stripes = new SpaceSaving[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new SpaceSaving(Math.max(4, 2 * topK / stripeCount));
+        }
+    }
+
+    /** Count one request for {@code key}. */
+    public void record(String key) {
+        if (!enabled) {
+            return;
+        }
+        sketch.add(key);
+        int h = key.hashCode();
+        SpaceSaving stripe = stripes[Math.floorMod(h ^ (h >>> 16), stripes.length)];
+        synchronized (stripe) {
+            stripe.offer(key);
+        }
+    }
+
+    /** Close the current window: publish its top-K and re-evaluate promotions. */
+    @Scheduled(fixedDelayString = "${throttlex.hot-keys.window-ms:10000}")
+    public void rotate() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        double seconds = Math.max(1, now - windowStart) / 1000.0;
+
+        List<HeavyHitter> hitters = new ArrayList<>();
+        for (SpaceSaving stripe : stripes) {
+            List<Map.Entry<String, Long>> entries;
+            synchronized (stripe) {
+                entries = stripe.entries();
+                stripe.clear();
+            }
+            for (Map.Entry<String, Long> e : entries) {
+                long count = Math.min(e.getValue(), sketch.estimate(e.getKey()));
+                hitters.add(new HeavyHitter(e.getKey(), count, count / seconds));
+            }
+        }
+        sketch.clear();
+        windowStart = now;
+
+        hitters.sort(Comparator.comparingLong(HeavyHitter::getCount).reversed());
+        if (hitters.size() > topK) {
+            hitters = new ArrayList<>(hitters.subList(0, topK));
+        }
+        snapshot = hitters;
+        hotKeyService.applyRates(hitters);
+    }
+
+    /** Top-K keys of the last completed window, busiest first. */
+    public List<HeavyHitter> topKeys() {
+        return snapshot;
+    }
+
+    @Value
+    public static class HeavyHitter {
+        String key;
+        long count;
+        double ratePerSecond;
+    }
+}
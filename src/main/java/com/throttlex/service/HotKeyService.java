@@ -0,0 +1,301 @@
+package com.throttlex.service;
+
+import com.throttlex.config.ThrottleXProperties;
+import com.throttlex.model.Policy;
+import com.throttlex.model.RateLimitDecision;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Local fast path for promoted hot keys.
+ *
+ * A promoted token-bucket key takes a lease of tokens from its shared
+ * {@code throttlex_usage} row in one transaction and hands them out from
+ * memory; only when the lease runs dry does it go back to the database. The
+ * row therefore sees one locked update per lease instead of one per request,
+ * while other nodes still draw from the same bucket. Unused tokens are
+ * returned when the key is demoted. A lease is bound to the policy it was
+ * promoted under: it is closed when that policy changes on this node, or when
+ * a renewal finds the key is no longer a token bucket.
+ */
+@Slf4j
+@Service
+public class HotKeyService {
+
+    private final DecisionService decisionService;
+    private final PolicyService policyService;
+    private final QuotaService quotaService;
+    private final ExecutorService decisionExecutor;
+    private final ThrottleXProperties.HotKeys config;
+    private final long failureBackoffMs;
+
+    private final ConcurrentMap<String, TokenLease> leases = new ConcurrentHashMap<>();
+
+    public HotKeyService(DecisionService decisionService,
+                         PolicyService policyService,
+                         QuotaService quotaService,
+                         @Qualifier("decisionExecutor") ExecutorService decisionExecutor,
+                         ThrottleXProperties properties) {
+        this.decisionService = decisionService;
+        this.policyService = policyService;
+        this.quotaService = quotaService;
+        this.decisionExecutor = decisionExecutor;
+        this.config = properties.getHotKeys();
+        this.failureBackoffMs = Math.max(1, properties.getDecision().getLatencyBudgetMs());
+        // Tokens leased under the old policy are dropped; the next check resolves the new one
+        policyService.onChange(this::close);
+    }
+
+    /** The lease of a promoted key, or null if the key takes the normal path. */
+    public TokenLease leaseFor(String key) {
+        return leases.isEmpty() ? null : leases.get(key);
+    }
+
+    /**
+     * Decide one request costing {@code cost} from the key's lease alone, without
+     * touching the database: admitted while the lease holds enough tokens, denied
+     * while a drained bucket refills. The decision reports the tokens left in this
+     * node's lease as remaining, a lower bound of what the shared bucket holds.
+     * @return the decision, or null if only a renewal can decide it (or the key was
+     *         demoted meanwhile); see {@link #renewAndDecide}.
+     */
+    public RateLimitDecision decideLocal(TokenLease lease, long cost) {
+        RateLimitDecision local;
+        synchronized (lease) {
+            local = takeLocal(lease, lease.policy, cost, false);
+        }
+        return local == null || !local.isAllowed() ? local : reserveQuota(lease, cost, local);
+    }
+
+    /**
+     * Decide one request the lease could not: completes once a renewal from the
+     * database (shared by all requests waiting on this lease) has run on the
+     * decision executor.
+     * @return the decision; completes with null if the key was demoted meanwhile.
+     */
+    public CompletableFuture<RateLimitDecision> renewAndDecide(TokenLease lease, long cost) {
+        CompletableFuture<Void> renewal;
+        synchronized (lease) {
+            if (lease.closed) {
+                return CompletableFuture.completedFuture(null);
+            }
+            renewal = renew(lease, cost);
+        }
+        return renewal.thenApply(v -> {
+            RateLimitDecision local;
+            synchronized (lease) {
+                local = takeLocal(lease, lease.policy, cost, true);
+            }
+            return local == null || !local.isAllowed() ? local : reserveQuota(lease, cost, local);
+        });
+    }
+
+    /**
+     * Reserve calendar quota for a request the lease admitted; when the quota refuses
+     * it (or cannot be read) its tokens go back to the lease.
+     */
+    private RateLimitDecision reserveQuota(TokenLease lease, long cost, RateLimitDecision admitted) {
+        boolean reserved = false;
+        try {
+            reserved = quotaService.tryAcquire(lease.key, lease.policy);
+        } finally {
+            if (!reserved) {
+                synchronized (lease) {
+                    if (!lease.closed) {
+                        lease.tokens += cost;
+                    }
+                }
+            }
+        }
+        return reserved ? admitted : quotaService.denial(lease.key, lease.policy, System.currentTimeMillis());
+    }
+
+    /**
+     * Take {@code cost} tokens from the lease if it holds them. Otherwise deny when a
+     * renewal cannot help right now (or just ran), or return null to ask for one.
+     */
+    private RateLimitDecision takeLocal(TokenLease lease, Policy policy, long cost, boolean renewed) {
+        if (lease.closed) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        boolean allowed = lease.tokens >= cost;
+        if (!allowed && !renewed && now >= lease.emptyUntil) {
+            return null;
+        }
+        if (allowed) {
+            lease.tokens -= cost;
+        }
+        long refillRate = Math.max(1, policy.getRefillRate());
+        return RateLimitDecision.builder()
+                .allowed(allowed)
+                .limit(policy.getCapacity())
+                .remaining(lease.tokens)
+                .resetMillis(Math.max(0, policy.getCapacity() - lease.tokens) * 1000L / refillRate)
+                .retryAfterMillis(allowed ? 0 : Math.max(0, lease.emptyUntil - now))
+                .build();
+    }
+
+    /**
+     * Start (or join) the lease's renewal. Must hold the lease's monitor. A renewal
+     * that outlasts the latency budget fails like any other, so a hung database holds
+     * waiters for one budget at most; tokens it grants after that are lost, which only
+     * makes the bucket stricter until it refills.
+     */
+    private CompletableFuture<Void> renew(TokenLease lease, long cost) {
+        if (lease.renewal != null) {
+            return lease.renewal;
+        }
+        long now = System.currentTimeMillis();
+        if (now < lease.failedUntil) {
+            // Fail over at once instead of every waiter spending its budget on a struggling database
+            return CompletableFuture.failedFuture(
+                    new TimeoutException("Lease renewal for " + lease.key + " failed recently"));
+        }
+        Policy policy = lease.policy;
+        long size = Math.max(cost - lease.tokens, Math.min(config.getLeaseSize(), policy.getCapacity() / 4));
+        CompletableFuture<Long> granted;
+        try {
+            granted = CompletableFuture.supplyAsync(() -> decisionService.leaseTokens(lease.key, size), decisionExecutor)
+                    .orTimeout(failureBackoffMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<Void> renewal = granted.handle((tokens, e) -> {
+            synchronized (lease) {
+                lease.renewal = null;
+                if (e != null) {
+                    lease.failedUntil = System.currentTimeMillis() + failureBackoffMs;
+                    throw new CompletionException(e);
+                }
+                if (tokens < 0) {
+                    // No longer a token bucket: give the key back to per-request checks
+                    lease.closed = true;
+                    leases.remove(lease.key, lease);
+                    log.info("Demoted hot key {}: its policy is no longer a token bucket", lease.key);
+                    return null;
+                }
+                lease.tokens += tokens;
+                if (tokens < size) {
+                    // Bucket drained: wait for it to refill before asking again
+                    lease.emptyUntil = System.currentTimeMillis() + Math.max(1, 1000 / Math.max(1, policy.getRefillRate()));
+                }
+                return null;
+            }
+        });
+        if (!renewal.isDone()) {
+            lease.renewal = renewal;
+        }
+        return renewal;
+    }
+
+    /**
+     * Promote keys at or above the promote rate and demote promoted keys that fell
+     * below the demote rate (or out of the top-K). Only token-bucket keys are promoted.
+     */
+    public void applyRates(List<HeavyHitterService.HeavyHitter> hitters) {
+        if (config.getPromoteRate() <= 0) {
+            return;
+        }
+        Set<String> keep = new HashSet<>();
+        for (HeavyHitterService.HeavyHitter h : hitters) {
+            if (leases.containsKey(h.getKey())) {
+                if (h.getRatePerSecond() >= config.getDemoteRate()) {
+                    keep.add(h.getKey());
+                }
+            } else if (h.getRatePerSecond() >= config.getPromoteRate()) {
+                Policy policy = policyService.lastKnown(h.getKey());
+                if (policy.getType() == Policy.PolicyType.TOKEN_BUCKET) {
+                    leases.put(h.getKey(), new TokenLease(h.getKey(), policy));
+                    keep.add(h.getKey());
+                    log.info("Promoted hot key {} ({} req/s) to leased local state", h.getKey(), h.getRatePerSecond());
+                }
+            }
+        }
+        for (String key : leases.keySet()) {
+            if (!keep.contains(key)) {
+                demote(key);
+            }
+        }
+    }
+
+    public boolean isPromoted(String key) {
+        return leases.containsKey(key);
+    }
+
+    public long leasedTokens(String key) {
+        TokenLease lease = leases.get(key);
+        if (lease == null) {
+            return 0;
+        }
+        synchronized (lease) {
+            return lease.tokens;
+        }
+    }
+
+    public void reset(String key) {
+        close(key); // tokens are dropped: the bucket itself is being reset
+    }
+
+    /** Drop the key's lease and its tokens; requests in flight on it take the normal path. */
+    private void close(String key) {
+        TokenLease lease = leases.remove(key);
+        if (lease != null) {
+            synchronized (lease) {
+                lease.closed = true;
+                lease.tokens = 0;
+            }
+        }
+    }
+
+    private void demote(String key) {
+        TokenLease lease = leases.remove(key);
+        if (lease == null) {
+            return;
+        }
+        long unused;
+        synchronized (lease) {
+            lease.closed = true;
+            unused = lease.tokens;
+            lease.tokens = 0;
+        }
+        if (unused > 0) {
+            try {
+                decisionService.returnLease(key, unused);
+            } catch (RuntimeException e) {
+                // Losing them only makes the bucket stricter until it refills
+                log.warn("Could not return {} leased tokens for key {}: {}", unused, key, e.getMessage());
+            }
+        }
+        log.info("Demoted hot key {}", key);
+    }
+
+    public static final class TokenLease {
+        private final String key;
+        /** The policy the key was promoted under. */
+        private final Policy policy;
+        private long tokens;
+        private long emptyUntil;
+        private long failedUntil;
+        private boolean closed;
+        private CompletableFuture<Void> renewal;
+
+        private TokenLease(String key, Policy policy) {
+            this.key = key;
+            this.policy = policy;
+        }
+    }
+}
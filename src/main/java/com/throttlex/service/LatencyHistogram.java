@@ -0,0 +1,56 @@
+package com.throttlex.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size, allocation-free latency histogram with power-of-two microsecond buckets
+ * (&le;1us, &le;2us, &le;4us ... &le;~1s, then overflow).
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 21;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS + 1];
+    private final LongAdder totalNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos) / 1000;
+        // Smallest i with micros <= 2^i
+        int bucket = (micros <= 1) ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+        counts[Math.min(bucket, BUCKETS)].increment();
+        totalNanos.add(nanos);
+    }
+
+    public long count() {
+        long sum = 0;
+        for (LongAdder c : counts) {
+            sum += c.sum();
+        }
+        return sum;
+    }
+
+    public double meanMicros() {
+        long n = count();
+        return (n == 0) ? 0 : totalNanos.sum() / 1000.0 / n;
+    }
+
+    /** Non-empty buckets keyed by upper bound, e.g. {@code "<=8us" -> 42}. */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> out = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            long c = counts[i].sum();
+            if (c > 0) {
+                out.put(i < BUCKETS ? "<=" + (1L << i) + "us" : ">" + (1L << (BUCKETS - 1)) + "us", c);
+            }
+        }
+        return out;
+    }
+}
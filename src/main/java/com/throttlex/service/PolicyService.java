@@ -1,21 +1,59 @@
 package com.throttlex.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.throttlex.config.ThrottleXProperties;
 import com.throttlex.dto.PolicyRequest;
 import com.throttlex.exception.PolicyNotFoundException;
+import com.throttlex.model.CheckRequest;
 import com.throttlex.model.Policy;
 import com.throttlex.model.PolicyEntity;
 import com.throttlex.persistence.PolicyRepository;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class PolicyService {
 
+    public static final String API_KEY_PREFIX = "apikey:";
+    public static final String TENANT_PREFIX = "tenant:";
+    public static final String ROUTE_PREFIX = "route:";
+
     private final PolicyRepository policyRepository;
+    private final ThrottleXProperties properties;
+
+    /** Last policy resolved per key, so decisions can still be made while the database is unavailable. */
+    private final Cache<String, Policy> lastKnown = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .build();
+
+    private final List<Consumer<String>> changeListeners = new CopyOnWriteArrayList<>();
+
+    /** Policies whose over-long sliding window was already reported, so each warns once. */
+    private final Set<String> clampedWindows = ConcurrentHashMap.newKeySet();
+
+    /** API keys with an exact {@code apikey:<value>} policy; read per request by admission control. */
+    private volatile Set<String> knownApiKeys = Set.of();
 
     public List<PolicyEntity> listPolicies() {
         return policyRepository.findAll();
@@ -32,25 +70,43 @@ public class PolicyService {
             throw new IllegalArgumentException("Policy already exists for key: " + request.getKey()
                     + ". Use PUT to update.");
         }
+        validateQuota(request);
+        validateWindow(request);
         PolicyEntity entity = PolicyEntity.builder()
                 .policyKey(request.getKey())
                 .type(request.getType())
                 .capacity(request.getCapacity())
                 .refillRate(request.getRefillRate())
                 .windowSeconds(request.getWindowSeconds())
+                .quotaLimit(request.getQuotaLimit())
+                .quotaPeriod(request.getQuotaPeriod())
+                .quotaTimezone(request.getQuotaTimezone())
+                .failureMode(request.getFailureMode())
                 .build();
-        return policyRepository.save(entity);
+        PolicyEntity saved = policyRepository.save(entity);
+        updateKnownApiKey(request.getKey(), true);
+        changed(request.getKey());
+        return saved;
     }
 
     @Transactional
     public PolicyEntity updatePolicy(String key, PolicyRequest request) {
         PolicyEntity entity = policyRepository.findByPolicyKey(key)
                 .orElseThrow(() -> new PolicyNotFoundException(key));
+        validateQuota(request);
+        validateWindow(request);
         entity.setType(request.getType());
         entity.setCapacity(request.getCapacity());
         entity.setRefillRate(request.getRefillRate());
         entity.setWindowSeconds(request.getWindowSeconds());
-        return policyRepository.save(entity);
+        entity.setQuotaLimit(request.getQuotaLimit());
+        entity.setQuotaPeriod(request.getQuotaPeriod());
+        entity.setQuotaTimezone(request.getQuotaTimezone());
+        entity.setFailureMode(request.getFailureMode());
+        lastKnown.invalidate(key);
+        PolicyEntity saved = policyRepository.save(entity);
+        changed(key);
+        return saved;
     }
 
     @Transactional
@@ -59,18 +115,234 @@ public class PolicyService {
             throw new PolicyNotFoundException(key);
         }
         policyRepository.deleteByPolicyKey(key);
+        lastKnown.invalidate(key);
+        updateKnownApiKey(key, false);
+        changed(key);
+    }
+
+    /**
+     * Register a callback run (on the caller's thread) with the key of every policy
+     * created, updated or deleted through this node, for state derived from the old policy.
+     */
+    public void onChange(Consumer<String> listener) {
+        changeListeners.add(listener);
+    }
+
+    private void changed(String key) {
+        changeListeners.forEach(listener -> listener.accept(key));
+    }
+
+    /**
+     * Whether {@code apiKey} has its own {@code apikey:<value>} policy, i.e. was issued
+     * by an operator. Answered from memory, never from the database.
+     */
+    public boolean isKnownApiKey(String apiKey) {
+        return knownApiKeys.contains(apiKey);
+    }
+
+    /** Reload {@link #isKnownApiKey} from the policy table, picking up other nodes' changes. */
+    @Scheduled(fixedDelayString = "${throttlex.shedding.api-key-refresh-ms:30000}")
+    public void refreshKnownApiKeys() {
+        Set<String> keys = new HashSet<>();
+        try {
+            for (String policyKey : policyRepository.findPolicyKeysStartingWith(API_KEY_PREFIX)) {
+                keys.add(policyKey.substring(API_KEY_PREFIX.length()));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Reloading API keys failed, keeping {} known keys: {}", knownApiKeys.size(), e.getMessage());
+            return;
+        }
+        keys.remove("*");
+        knownApiKeys = Set.copyOf(keys);
+    }
+
+    private synchronized void updateKnownApiKey(String policyKey, boolean present) {
+        if (!policyKey.startsWith(API_KEY_PREFIX) || policyKey.equals(API_KEY_PREFIX + "*")) {
+            return;
+        }
+        Set<String> keys = new HashSet<>(knownApiKeys);
+        String apiKey = policyKey.substring(API_KEY_PREFIX.length());
+        if (present) {
+            keys.add(apiKey);
+        } else {
+            keys.remove(apiKey);
+        }
+        knownApiKeys = Set.copyOf(keys);
+    }
+
+    /**
+     * Resolve the policy for a key — the persisted one, or the configured default
+     * token-bucket policy if none exists — and remember it for {@link #lastKnown}.
+     */
+    public Policy resolve(String key) {
+        Policy policy = policyRepository.findByPolicyKey(key)
+                .map(this::toPolicy)
+                .orElseGet(() -> defaultPolicy(key));
+        lastKnown.put(key, policy);
+        return policy;
+    }
+
+    /** The policy last resolved for a key, without touching the database. */
+    public Policy lastKnown(String key) {
+        Policy policy = lastKnown.getIfPresent(key);
+        return (policy != null) ? policy : defaultPolicy(key);
+    }
+
+    /**
+     * Resolve every level that applies to a request, leaf first: the client key
+     * (persisted or default policy), then {@code apikey:<value>} and
+     * {@code tenant:<value>} (exact policy, else the {@code apikey:*} /
+     * {@code tenant:*} template), then the longest {@code route:<prefix>} policy.
+     * Levels without a policy are not enforced. One query for all candidates.
+     * Each returned policy's {@code key} is the usage-state key for its level; for
+     * the API key level that is {@link #apiKeyStateKey}, so the raw key is never stored.
+     */
+    public List<Policy> resolveLevels(CheckRequest request) {
+        List<String> candidates = new ArrayList<>();
+        candidates.add(request.getKey());
+        if (request.getApiKey() != null) {
+            candidates.add(API_KEY_PREFIX + request.getApiKey());
+            candidates.add(API_KEY_PREFIX + "*");
+        }
+        if (request.getTenant() != null) {
+            candidates.add(TENANT_PREFIX + request.getTenant());
+            candidates.add(TENANT_PREFIX + "*");
+        }
+        List<String> routeKeys = routeCandidates(request.getRoute());
+        candidates.addAll(routeKeys);
+
+        Map<String, PolicyEntity> found = new HashMap<>();
+        for (PolicyEntity entity : policyRepository.findByPolicyKeyIn(candidates)) {
+            found.put(entity.getPolicyKey(), entity);
+        }
+
+        List<Policy> levels = new ArrayList<>();
+        PolicyEntity leaf = found.get(request.getKey());
+        Policy leafPolicy = (leaf != null) ? toPolicy(leaf) : defaultPolicy(request.getKey());
+        lastKnown.put(request.getKey(), leafPolicy);
+        levels.add(leafPolicy);
+        if (request.getApiKey() != null) {
+            addLevel(levels, found, API_KEY_PREFIX + request.getApiKey(), API_KEY_PREFIX + "*",
+                    apiKeyStateKey(request.getApiKey()));
+        }
+        if (request.getTenant() != null) {
+            String tenantKey = TENANT_PREFIX + request.getTenant();
+            addLevel(levels, found, tenantKey, TENANT_PREFIX + "*", tenantKey);
+        }
+        for (String routeKey : routeKeys) { // longest prefix first
+            if (found.containsKey(routeKey)) {
+                levels.add(toPolicy(found.get(routeKey)));
+                break;
+            }
+        }
+        return levels;
+    }
+
+    private void addLevel(List<Policy> levels, Map<String, PolicyEntity> found, String key, String template,
+                          String stateKey) {
+        PolicyEntity entity = found.containsKey(key) ? found.get(key) : found.get(template);
+        if (entity != null) {
+            Policy policy = toPolicy(entity);
+            policy.setKey(stateKey); // template policies keep per-value state
+            levels.add(policy);
+        }
+    }
+
+    /**
+     * Usage-state key of an API key: {@code apikey:} plus the SHA-256 of the key in hex,
+     * so the key itself never reaches {@code throttlex_usage} or the admin metrics.
+     */
+    public static String apiKeyStateKey(String apiKey) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(apiKey.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(API_KEY_PREFIX.length() + digest.length * 2).append(API_KEY_PREFIX);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // required of every JVM
+        }
+    }
+
+    /** {@code /v1/search/items} -> route:/v1/search/items, route:/v1/search, route:/v1, route:/ */
+    private static List<String> routeCandidates(String route) {
+        List<String> keys = new ArrayList<>();
+        if (route == null || route.isEmpty()) {
+            return keys;
+        }
+        String path = route;
+        while (true) {
+            keys.add(ROUTE_PREFIX + path);
+            int slash = path.lastIndexOf('/');
+            if (slash <= 0) {
+                break;
+            }
+            path = path.substring(0, slash);
+        }
+        if (!path.equals("/")) {
+            keys.add(ROUTE_PREFIX + "/");
+        }
+        return keys;
+    }
+
+    public Policy defaultPolicy(String key) {
+        return Policy.builder()
+                .key(key)
+                .type(Policy.PolicyType.TOKEN_BUCKET)
+                .capacity(properties.getDefaultCapacity())
+                .refillRate(properties.getDefaultRefillRate())
+                .windowSeconds(properties.getDefaultWindowSeconds())
+                .build();
+    }
+
+    private void validateWindow(PolicyRequest request) {
+        long max = properties.getSlidingWindow().maxWindowSeconds();
+        if (request.getType() == Policy.PolicyType.SLIDING_WINDOW && request.getWindowSeconds() > max) {
+            throw new IllegalArgumentException("windowSeconds must not exceed " + max
+                    + " (throttlex.sliding-window partition span)");
+        }
+    }
+
+    private void validateQuota(PolicyRequest request) {
+        if (request.getQuotaLimit() > 0 && request.getQuotaPeriod() == null) {
+            throw new IllegalArgumentException("quotaPeriod is required when quotaLimit is set");
+        }
+        if (request.getQuotaTimezone() != null) {
+            try {
+                ZoneId.of(request.getQuotaTimezone());
+            } catch (DateTimeException e) {
+                throw new IllegalArgumentException("Invalid quotaTimezone: " + request.getQuotaTimezone());
+            }
+        }
     }
 
     /**
      * Converts a persisted PolicyEntity to the domain Policy object used by limiters.
+     * A sliding window stored before the partition span was limited (or shrunk by a
+     * config change) is clamped to the span the log still retains, with a warning.
      */
     public Policy toPolicy(PolicyEntity entity) {
+        long windowSeconds = entity.getWindowSeconds();
+        long max = properties.getSlidingWindow().maxWindowSeconds();
+        if (entity.getType() == Policy.PolicyType.SLIDING_WINDOW && windowSeconds > max) {
+            if (clampedWindows.add(entity.getPolicyKey())) {
+                log.warn("Policy {} has a {}s sliding window but the log retains {}s; enforcing {}s."
+                                + " Shorten the window or raise throttlex.sliding-window.partitions",
+                        entity.getPolicyKey(), windowSeconds, max, max);
+            }
+            windowSeconds = max;
+        }
         return Policy.builder()
                 .key(entity.getPolicyKey())
                 .type(entity.getType())
                 .capacity(entity.getCapacity())
                 .refillRate(entity.getRefillRate())
-                .windowSeconds(entity.getWindowSeconds())
+                .windowSeconds(windowSeconds)
+                .quotaLimit(entity.getQuotaLimit())
+                .quotaPeriod(entity.getQuotaPeriod())
+                .quotaTimezone(entity.getQuotaTimezone())
+                .failureMode(entity.getFailureMode())
                 .build();
     }
 }
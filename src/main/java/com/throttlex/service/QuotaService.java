@@ -0,0 +1,157 @@
+package com.throttlex.service;
+
+import com.throttlex.config.ThrottleXProperties;
+import com.throttlex.limiter.QuotaCounter;
+import com.throttlex.limiter.QuotaLimiter;
+import com.throttlex.model.Policy;
+import com.throttlex.model.QuotaRecord;
+import com.throttlex.model.RateLimitDecision;
+import com.throttlex.persistence.QuotaRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+
+/**
+ * Enforces calendar quotas next to the rate policy.
+ *
+ * Usage is counted in memory and written back in batches on the scheduler
+ * thread, each write in its own short transaction, so request transactions
+ * never hold the period row. A node never has more than
+ * {@code throttlex.quota.max-overshoot} admissions per key that the database
+ * has not seen, which bounds how far a quota can be overshot; a request that
+ * finds the node at that cap is denied with a short retry while its usage is
+ * written back, never written inline on the request path.
+ */
+@Slf4j
+@Service
+public class QuotaService {
+
+    private final QuotaRepository quotaRepository;
+    private final QuotaLimiter quotaLimiter;
+    private final ThrottleXProperties properties;
+    private final TaskScheduler taskScheduler;
+    private final TransactionTemplate flushTransactions;
+
+    public QuotaService(QuotaRepository quotaRepository,
+                        QuotaLimiter quotaLimiter,
+                        ThrottleXProperties properties,
+                        TaskScheduler taskScheduler,
+                        PlatformTransactionManager transactionManager) {
+        this.quotaRepository = quotaRepository;
+        this.quotaLimiter = quotaLimiter;
+        this.properties = properties;
+        this.taskScheduler = taskScheduler;
+        // Never joins a caller's transaction: a failed write rolls back only itself
+        this.flushTransactions = new TransactionTemplate(transactionManager);
+        flushTransactions.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Reserve one request against the key's calendar quota, if the policy has one.
+     * Reads the database only on the first request of a period on this node and
+     * never writes to it; see {@link #denial} for why a request was refused.
+     * @return false if the quota is exhausted, or this node's unreconciled usage is
+     *         at the cap until its write-back lands.
+     */
+    public boolean tryAcquire(String key, Policy policy) {
+        if (!policy.hasQuota()) {
+            return true;
+        }
+        QuotaCounter counter = quotaLimiter.counter(key, policy, System.currentTimeMillis());
+        if (!counter.isLoaded()) {
+            counter.load(quotaRepository.findUsed(key, counter.getPeriodStart()).orElse(0L));
+        }
+        long maxOvershoot = properties.getQuota().getMaxOvershoot();
+        if (!quotaLimiter.allow(counter, policy, maxOvershoot)) {
+            if (counter.hasQuotaLeft(policy.getQuotaLimit())) {
+                // Only the unreconciled cap was hit: make sure a write-back is on its way
+                scheduleFlush(counter);
+            }
+            return false;
+        }
+        // Start writing back well before the node reaches its unreconciled limit
+        if (counter.getPending() >= Math.max(1, maxOvershoot / 2)) {
+            scheduleFlush(counter);
+        }
+        return true;
+    }
+
+    /**
+     * The decision for a request {@link #tryAcquire} refused: over quota until the
+     * next period, or, while quota is left but this node's usage is still being
+     * written back, a retry after one flush interval.
+     */
+    public RateLimitDecision denial(String key, Policy policy, long now) {
+        QuotaCounter counter = quotaLimiter.counter(key, policy, now);
+        if (!counter.hasQuotaLeft(policy.getQuotaLimit())) {
+            return RateLimitDecision.quotaExceeded(policy, now);
+        }
+        return RateLimitDecision.quotaBacklogged(policy, properties.getQuota().getFlushIntervalMs());
+    }
+
+    /** Give back a reservation when a later stage of the same check denied the request. */
+    public void release(String key, Policy policy) {
+        if (policy.hasQuota()) {
+            quotaLimiter.counter(key, policy, System.currentTimeMillis()).release();
+        }
+    }
+
+    /** Write all locally counted quota usage back to {@code throttlex_quota}. */
+    @Scheduled(fixedDelayString = "${throttlex.quota.flush-interval-ms:1000}")
+    public void flushAll() {
+        for (QuotaCounter counter : quotaLimiter.counters()) {
+            flush(counter);
+        }
+        quotaLimiter.evictExpired(System.currentTimeMillis());
+    }
+
+    public void reset(String key) {
+        quotaLimiter.reset(key);
+        quotaRepository.deleteByKeyId(key);
+    }
+
+    private void scheduleFlush(QuotaCounter counter) {
+        if (counter.scheduleFlush()) {
+            taskScheduler.schedule(() -> flush(counter), Instant.now());
+        }
+    }
+
+    private void flush(QuotaCounter counter) {
+        long delta = counter.beginFlush();
+        if (delta == 0) {
+            return;
+        }
+        String key = counter.getKeyId();
+        long periodStart = counter.getPeriodStart();
+        try {
+            flushTransactions.executeWithoutResult(status -> {
+                if (quotaRepository.addUsage(key, periodStart, delta) == 0) {
+                    quotaRepository.save(QuotaRecord.builder()
+                            .keyId(key)
+                            .periodStart(periodStart)
+                            .used(delta)
+                            .build());
+                }
+            });
+        } catch (RuntimeException e) {
+            // Typically a concurrent first insert from another node; retried on the next flush
+            counter.abortFlush();
+            log.warn("Quota flush failed for key {}: {}", key, e.getMessage());
+            return;
+        }
+        long fallback = counter.getReconciled() + delta;
+        long used;
+        try {
+            used = quotaRepository.findUsed(key, periodStart).orElse(fallback);
+        } catch (RuntimeException e) {
+            used = fallback;
+        }
+        counter.completeFlush(used);
+    }
+}
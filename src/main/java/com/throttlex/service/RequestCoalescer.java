@@ -0,0 +1,162 @@
+package com.throttlex.service;
+
+import com.throttlex.config.ThrottleXProperties;
+import com.throttlex.model.CheckRequest;
+import com.throttlex.model.RateLimitDecision;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Per-key request combiner in front of {@link DecisionService}.
+ *
+ * Each key (for composite checks: each combination of levels) has at most
+ * one database transaction in flight. Requests that
+ * arrive while it runs (plus, optionally, during a short collection window)
+ * queue up and are decided together by the next {@code decideBatch} call, so a
+ * hot key takes one row lock and one pool connection per batch instead of per
+ * request. Callers that gave up waiting cancel their future and are skipped.
+ */
+@Component
+public class RequestCoalescer {
+
+    private final DecisionService decisionService;
+    private final ExecutorService decisionExecutor;
+    private final long windowNanos;
+
+    private final ConcurrentMap<String, KeyQueue> queues = new ConcurrentHashMap<>();
+
+    public RequestCoalescer(DecisionService decisionService,
+                            @Qualifier("decisionExecutor") ExecutorService decisionExecutor,
+                            ThrottleXProperties properties) {
+        this.decisionService = decisionService;
+        this.decisionExecutor = decisionExecutor;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(properties.getDecision().getCoalesceWindowMicros());
+    }
+
+    public CompletableFuture<RateLimitDecision> submit(CheckRequest request) {
+        Ticket future = new Ticket(request.getCost());
+        boolean[] dispatch = new boolean[1];
+        // Enqueue under the map entry's lock, so a drain cannot drop the queue in between
+        KeyQueue queue = queues.compute(request.signature(), (k, q) -> {
+            KeyQueue target = q != null ? q : new KeyQueue(k, request);
+            synchronized (target) {
+                target.waiting.add(future);
+                dispatch[0] = !target.running;
+                target.running = true;
+            }
+            return target;
+        });
+        if (dispatch[0]) {
+            dispatch(queue);
+        }
+        return future;
+    }
+
+    private void dispatch(KeyQueue queue) {
+        try {
+            decisionExecutor.execute(() -> drain(queue));
+        } catch (RejectedExecutionException e) {
+            // Executor saturated: fail the waiting callers over to the fallback
+            List<Ticket> rejected = new ArrayList<>();
+            queues.computeIfPresent(queue.key, (k, q) -> {
+                synchronized (queue) {
+                    rejected.addAll(takeBatch(queue));
+                    queue.running = false;
+                }
+                return q == queue ? null : q;
+            });
+            rejected.forEach(f -> f.completeExceptionally(e));
+        }
+    }
+
+    private void drain(KeyQueue queue) {
+        if (windowNanos > 0) {
+            LockSupport.parkNanos(windowNanos);
+        }
+        List<Ticket> batch = new ArrayList<>();
+        for (Ticket f : takeBatch(queue)) {
+            if (!f.isDone()) {
+                batch.add(f);
+            }
+        }
+        try {
+            if (!batch.isEmpty()) {
+                long[] costs = new long[batch.size()];
+                for (int i = 0; i < costs.length; i++) {
+                    costs[i] = batch.get(i).cost;
+                }
+                RateLimitDecision[] decisions = decisionService.decideBatch(queue.request, costs);
+                for (int i = 0; i < decisions.length; i++) {
+                    batch.get(i).complete(decisions[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            batch.forEach(f -> f.completeExceptionally(e));
+        } finally {
+            if (finish(queue)) {
+                dispatch(queue);
+            }
+        }
+    }
+
+    /**
+     * End a drain: keep running if more requests queued up, else drop the queue.
+     * Both happen in one step under the map entry's lock, so a request arriving now
+     * either joins this queue's next drain or starts a new queue, never both.
+     * @return true if the queue must be drained again.
+     */
+    private boolean finish(KeyQueue queue) {
+        boolean[] more = new boolean[1];
+        queues.computeIfPresent(queue.key, (k, q) -> {
+            if (q != queue) {
+                return q;
+            }
+            synchronized (queue) {
+                more[0] = !queue.waiting.isEmpty();
+                queue.running = more[0];
+            }
+            return more[0] ? queue : null;
+        });
+        return more[0];
+    }
+
+    /** Take everything queued so far. */
+    private List<Ticket> takeBatch(KeyQueue queue) {
+        synchronized (queue) {
+            List<Ticket> batch = queue.waiting;
+            queue.waiting = new ArrayList<>();
+            return batch;
+        }
+    }
+
+    /** A waiting caller's future, carrying the cost of its request. */
+    private static final class Ticket extends CompletableFuture<RateLimitDecision> {
+        private final long cost;
+
+        private Ticket(long cost) {
+            this.cost = cost;
+        }
+    }
+
+    private static final class KeyQueue {
+        private final String key;
+        private final CheckRequest request;
+        private List<Ticket> waiting = new ArrayList<>();
+        private boolean running;
+
+        private KeyQueue(String key, CheckRequest request) {
+            this.key = key;
+            this.request = request;
+        }
+    }
+}
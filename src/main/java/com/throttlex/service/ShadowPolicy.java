@@ -0,0 +1,58 @@
+package com.throttlex.service;
+
+import com.throttlex.limiter.InMemoryLimiter;
+import com.throttlex.model.Policy;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A dry-run policy attached to a key or route prefix. It is evaluated next to the
+ * enforced policy against its own in-memory state and only records what it would
+ * have decided; it never blocks a request.
+ */
+@Getter
+public class ShadowPolicy {
+
+    private final String key;   // exact key match, or null
+    private final String route; // route prefix match, or null
+    private final Policy policy;
+
+    private final InMemoryLimiter limiter;
+    private final LongAdder evaluated = new LongAdder();
+    private final LongAdder wouldDeny = new LongAdder();
+    private final LongAdder enforcedDeny = new LongAdder();
+    private final LongAdder newDenials = new LongAdder();   // enforced allowed, shadow would deny
+    private final LongAdder newAllows = new LongAdder();    // enforced denied, shadow would allow
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public ShadowPolicy(String key, String route, Policy policy, long maxKeys) {
+        this.key = key;
+        this.route = route;
+        this.policy = policy;
+        this.limiter = new InMemoryLimiter(maxKeys, Duration.ofMinutes(10));
+    }
+
+    /**
+     * Evaluate the shadow policy for one request that the enforced policy already
+     * decided, charging it the request's {@code cost} like the enforced policy.
+     */
+    public void evaluate(String requestKey, long cost, boolean enforcedAllowed) {
+        long start = System.nanoTime();
+        boolean shadowAllowed = limiter.allow(requestKey, policy, cost);
+        evaluated.increment();
+        if (!shadowAllowed) {
+            wouldDeny.increment();
+        }
+        if (!enforcedAllowed) {
+            enforcedDeny.increment();
+        }
+        if (enforcedAllowed && !shadowAllowed) {
+            newDenials.increment();
+        } else if (!enforcedAllowed && shadowAllowed) {
+            newAllows.increment();
+        }
+        latency.record(System.nanoTime() - start);
+    }
+}
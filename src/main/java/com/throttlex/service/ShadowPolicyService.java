@@ -0,0 +1,140 @@
+package com.throttlex.service;
+
+import com.throttlex.config.ThrottleXProperties;
+import com.throttlex.dto.ShadowPolicyRequest;
+import com.throttlex.dto.ShadowPolicyResponse;
+import com.throttlex.exception.PolicyNotFoundException;
+import com.throttlex.model.Policy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * Registry and evaluator for shadow (dry-run) policies.
+ *
+ * Shadow policies live in memory only: they are a tuning experiment, not
+ * configuration, and evaluating them never touches the database.
+ */
+@Service
+@RequiredArgsConstructor
+public class ShadowPolicyService {
+
+    private static final ShadowPolicy[] NO_ROUTES = new ShadowPolicy[0];
+
+    private final ThrottleXProperties properties;
+
+    private final ConcurrentMap<String, ShadowPolicy> byKey = new ConcurrentHashMap<>();
+    /** Route-attached shadows, longest prefix first; replaced wholesale on change. */
+    private volatile ShadowPolicy[] byRoute = NO_ROUTES;
+
+    /**
+     * Evaluate the shadow policy attached to this key (or, failing that, to the
+     * longest matching route prefix) against the enforced decision.
+     * @param cost Permits the request took from the enforced policy.
+     */
+    public void evaluate(String key, String route, long cost, boolean enforcedAllowed) {
+        ShadowPolicy shadow = byKey.isEmpty() ? null : byKey.get(key);
+        if (shadow == null && route != null) {
+            for (ShadowPolicy candidate : byRoute) {
+                if (route.startsWith(candidate.getRoute())) {
+                    shadow = candidate;
+                    break;
+                }
+            }
+        }
+        if (shadow != null) {
+            shadow.evaluate(key, cost, enforcedAllowed);
+        }
+    }
+
+    /** Attach (or replace, resetting its state and counters) a shadow policy. */
+    public ShadowPolicyResponse register(ShadowPolicyRequest request) {
+        boolean hasKey = request.getKey() != null && !request.getKey().isEmpty();
+        boolean hasRoute = request.getRoute() != null && !request.getRoute().isEmpty();
+        if (hasKey == hasRoute) {
+            throw new IllegalArgumentException("Exactly one of key or route must be set for a shadow policy");
+        }
+        if (request.getType() == null) {
+            throw new IllegalArgumentException("Shadow policy type is required");
+        }
+        Policy policy = Policy.builder()
+                .key(hasKey ? request.getKey() : request.getRoute())
+                .type(request.getType())
+                .capacity(request.getCapacity())
+                .refillRate(request.getRefillRate())
+                .windowSeconds(request.getWindowSeconds())
+                .build();
+        ShadowPolicy shadow = new ShadowPolicy(
+                hasKey ? request.getKey() : null,
+                hasRoute ? request.getRoute() : null,
+                policy,
+                properties.getShadow().getMaxKeys());
+        if (hasKey) {
+            byKey.put(request.getKey(), shadow);
+        } else {
+            updateRoutes(request.getRoute(), shadow);
+        }
+        return toResponse(shadow);
+    }
+
+    public void remove(String key, String route) {
+        boolean removed;
+        if (key != null) {
+            removed = byKey.remove(key) != null;
+        } else if (route != null) {
+            removed = updateRoutes(route, null);
+        } else {
+            throw new IllegalArgumentException("Either key or route must be given");
+        }
+        if (!removed) {
+            throw new PolicyNotFoundException(key != null ? key : route);
+        }
+    }
+
+    public List<ShadowPolicyResponse> list() {
+        List<ShadowPolicyResponse> out = new ArrayList<>();
+        byKey.values().forEach(s -> out.add(toResponse(s)));
+        Arrays.stream(byRoute).forEach(s -> out.add(toResponse(s)));
+        return out;
+    }
+
+    /** Replace or remove ({@code shadow == null}) the entry for a route prefix. */
+    private synchronized boolean updateRoutes(String route, ShadowPolicy shadow) {
+        List<ShadowPolicy> routes = Arrays.stream(byRoute)
+                .filter(s -> !s.getRoute().equals(route))
+                .collect(Collectors.toList());
+        boolean existed = routes.size() != byRoute.length;
+        if (shadow != null) {
+            routes.add(shadow);
+        }
+        routes.sort(Comparator.comparingInt((ShadowPolicy s) -> s.getRoute().length()).reversed());
+        byRoute = routes.toArray(NO_ROUTES);
+        return existed;
+    }
+
+    private ShadowPolicyResponse toResponse(ShadowPolicy s) {
+        Policy p = s.getPolicy();
+        return ShadowPolicyResponse.builder()
+                .key(s.getKey())
+                .route(s.getRoute())
+                .type(p.getType())
+                .capacity(p.getCapacity())
+                .refillRate(p.getRefillRate())
+                .windowSeconds(p.getWindowSeconds())
+                .evaluated(s.getEvaluated().sum())
+                .wouldDeny(s.getWouldDeny().sum())
+                .enforcedDeny(s.getEnforcedDeny().sum())
+                .newDenials(s.getNewDenials().sum())
+                .newAllows(s.getNewAllows().sum())
+                .meanLatencyMicros(s.getLatency().meanMicros())
+                .latencyHistogram(s.getLatency().snapshot())
+                .build();
+    }
+}
@@ -0,0 +1,178 @@
+package com.throttlex.service;
+
+import com.throttlex.config.ThrottleXProperties;
+import com.throttlex.dto.ShardRequest;
+import com.throttlex.dto.ShardResponse;
+import com.throttlex.model.UsageRecord;
+import com.throttlex.persistence.ConsistentHashRing;
+import com.throttlex.persistence.ShardRouter;
+import com.throttlex.persistence.ShardedUsageStore;
+import com.throttlex.persistence.SlidingWindowRepository;
+import com.throttlex.persistence.StateShard;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Adds shards to a running sharded state store.
+ *
+ * The new shard's ring points are added one at a time. Each point takes over
+ * one arc from the shard that owned it. While routing for that arc's keys is
+ * paused, its usage records and sliding-window rows are copied to the new shard
+ * and the point goes live; a pause lasts one arc's copy and covers about
+ * {@code 1 / (shards * virtualNodes)} of all keys, while every other key keeps
+ * being served. The donor's copies are deleted afterwards, once nothing routes
+ * there any more. Keys outside the new shard's arcs never move.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "throttlex.sharding", name = "enabled", havingValue = "true")
+public class ShardRebalancer {
+
+    private final ShardRouter router;
+    private final ShardedUsageStore usageStore;
+    private final SlidingWindowRepository slidingWindowRepository;
+
+    public List<ShardResponse> listShards() {
+        ConsistentHashRing ring = router.ring();
+        return router.shards().stream()
+                .map(shard -> ShardResponse.builder()
+                        .name(shard.getName())
+                        .ringPoints(ring.pointCount(shard.getName()))
+                        .keys(usageStore.count(shard))
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Open a new shard, create its tables and move its share of the keys onto it.
+     * Append the shard to {@code throttlex.sharding.shards} before the next restart,
+     * or its keys go back to their previous shards without their recent state.
+     * If an earlier call for the same name failed part way, this resumes it on the
+     * shard's open pool: live points are kept and the remaining arcs are moved.
+     */
+    public synchronized ShardResponse addShard(ShardRequest request) {
+        ThrottleXProperties.Shard config = new ThrottleXProperties.Shard();
+        config.setName(request.getName());
+        config.setUrl(request.getUrl());
+        config.setUsername(request.getUsername());
+        config.setPassword(request.getPassword());
+        if (request.getMaximumPoolSize() != null) {
+            config.setMaximumPoolSize(request.getMaximumPoolSize());
+        }
+        if (request.getConnectionTimeoutMs() != null) {
+            config.setConnectionTimeoutMs(request.getConnectionTimeoutMs());
+        }
+        StateShard registered = router.shard(config.getName());
+        if (registered != null) {
+            ConsistentHashRing ring = router.ring();
+            if (ring.pointCount(config.getName()) >= ring.pointsOf(config.getName()).length) {
+                throw new IllegalArgumentException("Shard already exists: " + config.getName());
+            }
+            log.info("Resuming rebalance onto shard {}", registered);
+            return rebalanceOnto(registered, true);
+        }
+        StateShard shard = StateShard.open(config);
+        try {
+            usageStore.createTable(shard);
+            slidingWindowRepository.createPartitions(shard);
+            router.register(shard);
+        } catch (RuntimeException e) {
+            shard.close();
+            throw e;
+        }
+        return rebalanceOnto(shard, false);
+    }
+
+    /**
+     * Move every arc of {@code target}'s ring points onto it, one arc at a time.
+     * Arcs it already owns are skipped; when {@code resuming}, copies of them that a
+     * failed run left on their donors are deleted.
+     */
+    ShardResponse rebalanceOnto(StateShard target, boolean resuming) {
+        long start = System.currentTimeMillis();
+        long movedKeys = 0;
+        long movedRows = 0;
+        for (long point : router.ring().pointsOf(target.getName())) {
+            ConsistentHashRing ring = router.ring();
+            StateShard donor = router.shard(ring.ownerOf(point));
+            if (donor == target) {
+                // Point already live, or its arc wraps onto one of the shard's earlier points
+                if (resuming) {
+                    dropStaleCopies(target, ring.arcOf(point));
+                }
+                router.addPoint(point, target.getName());
+                continue;
+            }
+            Move move = new Move(donor, ring.arcOf(point));
+            router.exclusively(move.arc, () -> moveArc(point, target, move));
+            // Nothing routes to the donor for this arc any more
+            move.donor.getTransactions().executeWithoutResult(status -> {
+                usageStore.deleteInArc(move.donor, move.arc);
+                slidingWindowRepository.deleteKeys(move.donor, move.keys);
+            });
+            movedKeys += move.keys.size();
+            movedRows += move.logRows;
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        log.info("Rebalanced {} keys and {} sliding-window rows onto shard {} in {} ms",
+                movedKeys, movedRows, target, elapsed);
+        return ShardResponse.builder()
+                .name(target.getName())
+                .ringPoints(router.ring().pointCount(target.getName()))
+                .keys(usageStore.count(target))
+                .movedKeys(movedKeys)
+                .movedLogRows(movedRows)
+                .durationMs(elapsed)
+                .build();
+    }
+
+    /** Delete copies of {@code arc}'s keys from every shard but its owner; nothing routes there. */
+    private void dropStaleCopies(StateShard owner, ConsistentHashRing.Arc arc) {
+        for (StateShard shard : router.shards()) {
+            if (shard == owner) {
+                continue;
+            }
+            List<String> keys = new ArrayList<>();
+            usageStore.findInArc(shard, arc).forEach(r -> keys.add(r.getKeyId()));
+            if (!keys.isEmpty()) {
+                shard.getTransactions().executeWithoutResult(status -> {
+                    usageStore.deleteInArc(shard, arc);
+                    slidingWindowRepository.deleteKeys(shard, keys);
+                });
+            }
+        }
+    }
+
+    /** Copy one arc to {@code target} and hand it over. Runs with routing paused for the arc. */
+    private void moveArc(long point, StateShard target, Move move) {
+        List<UsageRecord> records = usageStore.findInArc(move.donor, move.arc);
+        List<String> keys = new ArrayList<>(records.size());
+        records.forEach(r -> keys.add(r.getKeyId()));
+        Integer logRows = target.getTransactions().execute(status -> {
+            usageStore.insertAll(target, records);
+            return slidingWindowRepository.copyKeys(move.donor, target, keys);
+        });
+        router.addPoint(point, target.getName());
+        move.keys = keys;
+        move.logRows = logRows == null ? 0 : logRows;
+    }
+
+    private static final class Move {
+        private final StateShard donor;
+        private final ConsistentHashRing.Arc arc;
+        private List<String> keys;
+        private int logRows;
+
+        private Move(StateShard donor, ConsistentHashRing.Arc arc) {
+            this.donor = donor;
+            this.arc = arc;
+        }
+    }
+}
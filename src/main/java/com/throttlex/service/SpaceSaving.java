@@ -0,0 +1,57 @@
+package com.throttlex.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving top-K tracker with a fixed number of counters. When full, a new
+ * key replaces the smallest counter and inherits its count (so counts are upper
+ * bounds, and any key above {@code total / capacity} is guaranteed to be tracked).
+ * Not thread-safe on its own; callers stripe instances and lock each one.
+ */
+public class SpaceSaving {
+
+    private final int capacity;
+    private final Map<String, long[]> counters;
+
+    public SpaceSaving(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.counters = new HashMap<>(this.capacity * 2);
+    }
+
+    public void offer(String key) {
+        long[] counter = counters.get(key);
+        if (counter != null) {
+            counter[0]++;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(key, new long[]{1});
+            return;
+        }
+        String minKey = null;
+        long[] min = null;
+        for (Map.Entry<String, long[]> e : counters.entrySet()) {
+            if (min == null || e.getValue()[0] < min[0]) {
+                minKey = e.getKey();
+                min = e.getValue();
+            }
+        }
+        counters.remove(minKey);
+        min[0]++;
+        counters.put(key, min);
+    }
+
+    /** Tracked keys with their (upper-bound) counts. */
+    public List<Map.Entry<String, Long>> entries() {
+        List<Map.Entry<String, Long>> out = new ArrayList<>(counters.size());
+        counters.forEach((k, v) -> out.add(Map.entry(k, v[0])));
+        return out;
+    }
+
+    public void clear() {
+        counters.clear();
+    }
+}
@@ -1,27 +1,86 @@
 package com.throttlex.service;
 
-import com.throttlex.limiter.LimiterFactory;
+import com.throttlex.config.ThrottleXProperties;
+import com.throttlex.model.CheckRequest;
 import com.throttlex.model.Policy;
-import com.throttlex.model.PolicyEntity;
+import com.throttlex.model.RateLimitDecision;
 import com.throttlex.model.UsageRecord;
-import com.throttlex.persistence.PolicyRepository;
-import com.throttlex.persistence.UsageRepository;
-import lombok.RequiredArgsConstructor;
+import com.throttlex.persistence.UsageStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import javax.servlet.http.HttpServletRequest;
 
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
+@Slf4j
 @Service
-@RequiredArgsConstructor
 public class ThrottleXService {
 
-    private final UsageRepository usageRepository;
-    private final PolicyRepository policyRepository;
-    private final LimiterFactory limiterFactory;
+    private final UsageStore usageStore;
     private final PolicyService policyService;
+    private final QuotaService quotaService;
+    private final ShadowPolicyService shadowPolicyService;
+    private final DecisionService decisionService;
+    private final RequestCoalescer requestCoalescer;
+    private final HotKeyService hotKeyService;
+    private final FallbackService fallbackService;
+    private final CircuitBreaker circuitBreaker;
+    private final ExecutorService decisionExecutor;
+    private final long latencyBudgetMs;
+    private final ThrottleXProperties.Composite composite;
+    private final long defaultCost;
+    private final String[] costPrefixes;
+    private final long[] routeCosts;
+    private final String costAttribute;
+
+    public ThrottleXService(UsageStore usageStore,
+                            PolicyService policyService,
+                            QuotaService quotaService,
+                            ShadowPolicyService shadowPolicyService,
+                            DecisionService decisionService,
+                            RequestCoalescer requestCoalescer,
+                            HotKeyService hotKeyService,
+                            FallbackService fallbackService,
+                            CircuitBreaker circuitBreaker,
+                            @Qualifier("decisionExecutor") ExecutorService decisionExecutor,
+                            ThrottleXProperties properties) {
+        this.usageStore = usageStore;
+        this.policyService = policyService;
+        this.quotaService = quotaService;
+        this.shadowPolicyService = shadowPolicyService;
+        this.decisionService = decisionService;
+        this.requestCoalescer = requestCoalescer;
+        this.hotKeyService = hotKeyService;
+        this.fallbackService = fallbackService;
+        this.circuitBreaker = circuitBreaker;
+        this.decisionExecutor = decisionExecutor;
+        this.latencyBudgetMs = properties.getDecision().getLatencyBudgetMs();
+        this.composite = properties.getComposite();
+
+        // Longest prefix first, so the first match is the most specific
+        ThrottleXProperties.Cost cost = properties.getCost();
+        this.defaultCost = Math.max(1, cost.getDefaultCost());
+        this.costPrefixes = cost.getRoutes().keySet().stream()
+                .sorted(Comparator.comparingInt(String::length).reversed())
+                .toArray(String[]::new);
+        this.costAttribute = cost.getAttribute();
+        this.routeCosts = new long[costPrefixes.length];
+        for (int i = 0; i < costPrefixes.length; i++) {
+            routeCosts[i] = Math.max(1, cost.getRoutes().get(costPrefixes[i]));
+        }
+        circuitBreaker.onClose(this::scheduleReconcile);
+    }
 
     /** Extract the throttling key from the incoming request (IP-based). */
     public String extractKey(HttpServletRequest req) {
@@ -30,55 +89,231 @@ public class ThrottleXService {
     }
 
     /**
-     * Check whether the request identified by {@code key} is allowed.
-     * Looks up the applicable policy (persisted or default), then delegates
-     * to the correct algorithm.
+     * Extract every level the request is limited by, and its cost from the route
+     * cost table. Without composite policies the only level is the client key.
      */
-    @Transactional
+    public CheckRequest extractRequest(HttpServletRequest req) {
+        String key = extractKey(req);
+        long cost = costOf(req.getRequestURI());
+        if (!composite.isEnabled()) {
+            return CheckRequest.builder().key(key).cost(cost).build();
+        }
+        return CheckRequest.builder()
+                .key(key)
+                .apiKey(req.getHeader(composite.getApiKeyHeader()))
+                .tenant(req.getHeader(composite.getTenantHeader()))
+                .route(req.getRequestURI())
+                .cost(cost)
+                .build();
+    }
+
+    /** Permits a request on {@code uri} takes: longest matching route prefix, else the default. */
+    public long costOf(String uri) {
+        for (int i = 0; i < costPrefixes.length; i++) {
+            if (uri.startsWith(costPrefixes[i])) {
+                return routeCosts[i];
+            }
+        }
+        return defaultCost;
+    }
+
+    /** Check a request that has no route context (shadow policies match by key only). */
     public boolean check(String key) {
-        // Resolve policy — fall back to a default token-bucket policy if none configured
-        Policy policy = policyRepository.findByPolicyKey(key)
-                .map(policyService::toPolicy)
-                .orElseGet(() -> Policy.builder()
-                        .key(key)
-                        .type(Policy.PolicyType.TOKEN_BUCKET)
-                        .capacity(100)
-                        .refillRate(10)
-                        .windowSeconds(60)
-                        .build());
-
-        // Resolve (or create) the usage record for this key
-        UsageRecord record = usageRepository.findByKeyId(key)
-                .orElseGet(() -> {
-                    UsageRecord r = new UsageRecord();
-                    r.setKeyId(key);
-                    r.setTokens(policy.getCapacity());
-                    r.setLastRefill(System.currentTimeMillis());
-                    return usageRepository.save(r);
-                });
-
-        boolean allowed = limiterFactory.allow(policy.getType().name(), record, policy);
-
-        // Persist updated token state (relevant for token-bucket)
-        usageRepository.save(record);
-        return allowed;
+        return check(CheckRequest.of(key), null).isAllowed();
+    }
+
+    /**
+     * Check whether the request identified by {@code key} is allowed.
+     * The database decision runs within the configured latency budget behind a
+     * circuit breaker; when it is slow, failing or the breaker is open, the
+     * request is decided locally per the policy's failure mode instead.
+     * With composite policies, all levels of the request are decided atomically.
+     * Any shadow policy on the key or route is evaluated in memory afterwards.
+     * @return the decision, with the remaining permits and reset/retry times of the
+     *         level that decided it, for the response headers.
+     */
+    public RateLimitDecision check(CheckRequest request, String route) {
+        if (latencyBudgetMs > 0) {
+            return checkAsync(request, route).join();
+        }
+        // No budget: decide inline on the calling thread
+        String key = request.getKey();
+        RateLimitDecision decision;
+        if (!circuitBreaker.allowRequest()) {
+            decision = fallbackService.decide(key, request.getCost());
+        } else {
+            try {
+                decision = decisionService.decideBatch(request, new long[]{request.getCost()})[0];
+                circuitBreaker.recordSuccess();
+            } catch (RuntimeException e) {
+                decision = onFailure(request, e);
+            }
+        }
+        shadowPolicyService.evaluate(key, route, request.getCost(), decision.isAllowed());
+        return decision;
+    }
+
+    /**
+     * Non-blocking {@link #check(CheckRequest, String)}: the database decision runs on
+     * the decision executor and the returned future completes with it, or with the
+     * local fallback decision once the latency budget runs out. Never completes
+     * exceptionally. Served without a thread switch when the breaker is open or a
+     * promoted hot key's lease holds enough tokens; decisions from the lease alone
+     * neither pass through nor count towards the breaker.
+     */
+    public CompletableFuture<RateLimitDecision> checkAsync(CheckRequest request, String route) {
+        String key = request.getKey();
+        HotKeyService.TokenLease lease = request.hasUpperLevels() || latencyBudgetMs <= 0
+                ? null : hotKeyService.leaseFor(key);
+        RateLimitDecision local = lease == null ? null : decideLocal(request, lease);
+        CompletableFuture<RateLimitDecision> decision;
+        if (local != null) {
+            decision = CompletableFuture.completedFuture(local);
+        } else if (circuitBreaker.allowRequest()) {
+            decision = decideAsync(request, lease);
+        } else {
+            decision = CompletableFuture.completedFuture(fallbackService.decide(key, request.getCost()));
+        }
+        return decision.thenApply(d -> {
+            shadowPolicyService.evaluate(key, route, request.getCost(), d.isAllowed());
+            return d;
+        });
+    }
+
+    private RateLimitDecision decideLocal(CheckRequest request, HotKeyService.TokenLease lease) {
+        try {
+            return hotKeyService.decideLocal(lease, request.getCost());
+        } catch (RuntimeException e) {
+            return onFailure(request, e);
+        }
+    }
+
+    /** The database path: every outcome here, success or failure, is recorded with the breaker. */
+    private CompletableFuture<RateLimitDecision> decideAsync(CheckRequest request, HotKeyService.TokenLease lease) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(latencyBudgetMs);
+        CompletableFuture<RateLimitDecision> pending;
+        if (lease == null) {
+            pending = submit(request, deadline);
+        } else {
+            // Promoted hot key: renew its lease; demoted meanwhile -> normal path
+            pending = hotKeyService.renewAndDecide(lease, request.getCost())
+                    .thenCompose(d -> d != null ? CompletableFuture.completedFuture(d) : submit(request, deadline));
+            if (!pending.isDone()) {
+                pending = pending.orTimeout(latencyBudgetMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        return pending.handle((decision, e) -> {
+            if (e != null) {
+                return onFailure(request, e instanceof CompletionException ? e.getCause() : e);
+            }
+            circuitBreaker.recordSuccess();
+            return decision;
+        });
+    }
+
+    /**
+     * Queue the request with the coalescer; concurrent checks for the same key share
+     * one transaction. The ticket itself times out at the deadline, so a caller that
+     * has moved on to the fallback is dropped from its batch if not yet picked up
+     * (already running, it may still commit, in which case the extra local admission
+     * errs conservative).
+     */
+    private CompletableFuture<RateLimitDecision> submit(CheckRequest request, long deadline) {
+        CompletableFuture<RateLimitDecision> ticket = requestCoalescer.submit(request);
+        if (latencyBudgetMs > 0 && !ticket.isDone()) {
+            long remaining = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+            ticket.orTimeout(remaining, TimeUnit.MILLISECONDS);
+        }
+        return ticket;
+    }
+
+    private RateLimitDecision onFailure(CheckRequest request, Throwable e) {
+        circuitBreaker.recordFailure();
+        log.debug("Database decision for key {} failed ({}), deciding locally", request.getKey(), e.toString());
+        return fallbackService.decide(request.getKey(), request.getCost());
+    }
+
+    /**
+     * After an admitted request was served, debit any cost the application reported
+     * in the cost request attribute beyond what the request paid up front.
+     */
+    public void settleCost(CheckRequest request, HttpServletRequest req) {
+        Object reported = req.getAttribute(costAttribute);
+        if (reported instanceof Number) {
+            debit(request, ((Number) reported).longValue() - request.getCost());
+        }
+    }
+
+    /**
+     * Charge an admitted request for cost beyond what it paid up front, once it has
+     * been served. Runs on the decision executor so the response is not held up;
+     * dropped (and logged) while the database path is degraded or saturated.
+     */
+    public void debit(CheckRequest request, long permits) {
+        if (permits <= 0) {
+            return;
+        }
+        if (circuitBreaker.getState() != CircuitBreaker.State.CLOSED) {
+            log.debug("Dropping deferred debit of {} for key {}: database path degraded", permits, request.getKey());
+            return;
+        }
+        try {
+            decisionExecutor.execute(() -> {
+                try {
+                    decisionService.debit(request, permits);
+                } catch (RuntimeException e) {
+                    log.warn("Deferred debit of {} for key {} failed: {}", permits, request.getKey(), e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("Dropping deferred debit of {} for key {}: executor saturated", permits, request.getKey());
+        }
+    }
+
+    private void scheduleReconcile() {
+        try {
+            decisionExecutor.execute(fallbackService::reconcile);
+        } catch (RejectedExecutionException e) {
+            // The periodic retry below picks it up
+        }
+    }
+
+    /** Retry reconciliation of local admissions that could not be written when the breaker closed. */
+    @Scheduled(fixedDelayString = "${throttlex.fallback.open-duration-ms:5000}")
+    public void retryReconcile() {
+        if (circuitBreaker.getState() == CircuitBreaker.State.CLOSED && fallbackService.getUnreconciledKeys() > 0) {
+            fallbackService.reconcile();
+        }
+    }
+
+    /** Circuit-breaker and fallback state, for admin status. */
+    public Map<String, Object> breakerStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", circuitBreaker.getState().name());
+        status.put("consecutiveFailures", circuitBreaker.getConsecutiveFailures());
+        status.put("trips", circuitBreaker.getTrips());
+        status.put("shortCircuited", circuitBreaker.getShortCircuited());
+        status.put("fallbackDecisions", fallbackService.getDecisions());
+        status.put("unreconciledKeys", fallbackService.getUnreconciledKeys());
+        status.put("latencyBudgetMs", latencyBudgetMs);
+        return status;
     }
 
     /** Return all usage records (for admin metrics). */
     public List<UsageRecord> getAllUsage() {
-        return usageRepository.findAll();
+        return usageStore.findAll();
     }
 
-    /** Reset the usage state for a given key. */
-    @Transactional
+    /** Reset the usage state (rate, quota and local fallback) for a given key. */
     public void resetKey(String key) {
-        usageRepository.findByKeyId(key).ifPresent(r -> {
-            Policy defaultPolicy = policyRepository.findByPolicyKey(key)
-                    .map(policyService::toPolicy)
-                    .orElseGet(() -> Policy.builder().capacity(100).refillRate(10).build());
-            r.setTokens(defaultPolicy.getCapacity());
+        hotKeyService.reset(key);
+        quotaService.reset(key);
+        fallbackService.reset(key);
+        Policy policy = policyService.resolve(key);
+        usageStore.inTransaction(key, () -> usageStore.findByKeyId(key).map(r -> {
+            r.setTokens(policy.getCapacity());
             r.setLastRefill(System.currentTimeMillis());
-            usageRepository.save(r);
-        });
+            return usageStore.save(r);
+        }));
     }
 }
@@ -0,0 +1,101 @@
+package com.throttlex.limiter;
+
+import com.throttlex.model.Policy;
+import com.throttlex.model.RateLimitDecision;
+import com.throttlex.model.UsageRecord;
+import com.throttlex.persistence.SlidingWindowRepository;
+import com.throttlex.persistence.SlidingWindowRepository.WindowUsage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CompositeLimiterTest {
+
+    @Mock
+    private SlidingWindowRepository slidingWindowRepository;
+
+    private CompositeLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        limiter = new CompositeLimiter(new TokenBucketLimiter(), slidingWindowRepository);
+    }
+
+    private static Policy bucket(String key, long capacity) {
+        return Policy.builder()
+                .key(key)
+                .type(Policy.PolicyType.TOKEN_BUCKET)
+                .capacity(capacity)
+                .refillRate(1)
+                .build();
+    }
+
+    private static UsageRecord record(String key, long tokens) {
+        return UsageRecord.builder()
+                .keyId(key)
+                .tokens(tokens)
+                .lastRefill(System.currentTimeMillis())
+                .build();
+    }
+
+    @Test
+    void testDecideAll_UpperLevelDenialDoesNotConsumeLowerLevels() {
+        UsageRecord client = record("1.2.3.4", 10);
+        UsageRecord tenant = record("tenant:acme", 2);
+
+        boolean[] result = allowed(limiter.decideAll(
+                List.of(client, tenant),
+                List.of(bucket("1.2.3.4", 10), bucket("tenant:acme", 100)),
+                new long[]{1, 1, 1}));
+
+        assertArrayEquals(new boolean[]{true, true, false}, result);
+        // Only the two admitted requests were charged to the client level
+        assertEquals(8, client.getTokens());
+        assertEquals(0, tenant.getTokens());
+    }
+
+    @Test
+    void testDecideAll_SlidingWindowLevelCountedOnceAndWrittenOnce() {
+        UsageRecord client = record("1.2.3.4", 10);
+        UsageRecord route = record("route:/v1/search", 0);
+        Policy window = Policy.builder()
+                .key("route:/v1/search")
+                .type(Policy.PolicyType.SLIDING_WINDOW)
+                .capacity(5)
+                .windowSeconds(60)
+                .build();
+        when(slidingWindowRepository.usageInWindow(eq("route:/v1/search"), anyLong())).thenReturn(usage(3));
+
+        boolean[] result = allowed(limiter.decideAll(
+                List.of(client, route),
+                List.of(bucket("1.2.3.4", 10), window),
+                new long[]{1, 1, 1, 1}));
+
+        assertArrayEquals(new boolean[]{true, true, false, false}, result);
+        assertEquals(8, client.getTokens());
+        verify(slidingWindowRepository, times(1)).usageInWindow(eq("route:/v1/search"), anyLong());
+        verify(slidingWindowRepository).saveAll(argThat(rows -> ((Collection<?>) rows).size() == 2));
+    }
+
+    private static boolean[] allowed(RateLimitDecision[] decisions) {
+        boolean[] allowed = new boolean[decisions.length];
+        for (int i = 0; i < decisions.length; i++) {
+            allowed[i] = decisions[i].isAllowed();
+        }
+        return allowed;
+    }
+
+    private static WindowUsage usage(long permits) {
+        long t = System.currentTimeMillis() - 1_000;
+        return permits == 0 ? WindowUsage.EMPTY : new WindowUsage(permits, t, t);
+    }
+}
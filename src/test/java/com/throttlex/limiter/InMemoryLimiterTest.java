@@ -0,0 +1,58 @@
+package com.throttlex.limiter;
+
+import com.throttlex.model.Policy;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryLimiterTest {
+
+    private final InMemoryLimiter limiter = new InMemoryLimiter(1_000, Duration.ofMinutes(1));
+
+    @Test
+    void testAllow_TokenBucketStopsAtCapacity() {
+        Policy policy = Policy.builder()
+                .type(Policy.PolicyType.TOKEN_BUCKET)
+                .capacity(3)
+                .refillRate(1)
+                .build();
+
+        assertTrue(limiter.allow("a", policy));
+        assertTrue(limiter.allow("a", policy));
+        assertTrue(limiter.allow("a", policy));
+        assertFalse(limiter.allow("a", policy));
+
+        // Keys have independent state
+        assertTrue(limiter.allow("b", policy));
+    }
+
+    @Test
+    void testAllow_SlidingWindowStopsAtCapacity() {
+        Policy policy = Policy.builder()
+                .type(Policy.PolicyType.SLIDING_WINDOW)
+                .capacity(2)
+                .windowSeconds(60)
+                .build();
+
+        assertTrue(limiter.allow("a", policy));
+        assertTrue(limiter.allow("a", policy));
+        assertFalse(limiter.allow("a", policy));
+    }
+
+    @Test
+    void testReset_RestoresCapacity() {
+        Policy policy = Policy.builder()
+                .type(Policy.PolicyType.TOKEN_BUCKET)
+                .capacity(1)
+                .refillRate(1)
+                .build();
+
+        assertTrue(limiter.allow("a", policy));
+        assertFalse(limiter.allow("a", policy));
+
+        limiter.reset("a");
+        assertTrue(limiter.allow("a", policy));
+    }
+}
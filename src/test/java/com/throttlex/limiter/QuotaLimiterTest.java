@@ -0,0 +1,103 @@
+package com.throttlex.limiter;
+
+import com.throttlex.model.Policy;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuotaLimiterTest {
+
+    private final QuotaLimiter limiter = new QuotaLimiter();
+
+    private Policy monthly(long limit, String zone) {
+        return Policy.builder()
+                .key("test")
+                .type(Policy.PolicyType.TOKEN_BUCKET)
+                .quotaLimit(limit)
+                .quotaPeriod(Policy.QuotaPeriod.MONTHLY)
+                .quotaTimezone(zone)
+                .build();
+    }
+
+    @Test
+    void testAllow_DeniesOnceQuotaIsUsed() {
+        Policy policy = monthly(3, "UTC");
+        QuotaCounter counter = limiter.counter("test", policy, System.currentTimeMillis());
+        counter.load(1);
+
+        assertTrue(limiter.allow(counter, policy, 100));
+        assertTrue(limiter.allow(counter, policy, 100));
+        assertFalse(limiter.allow(counter, policy, 100));
+
+        // A later stage denied one of them -> the reservation comes back
+        counter.release();
+        assertTrue(limiter.allow(counter, policy, 100));
+    }
+
+    @Test
+    void testAllow_UnreconciledUsageIsBounded() {
+        Policy policy = monthly(1_000, "UTC");
+        QuotaCounter counter = limiter.counter("test", policy, System.currentTimeMillis());
+        counter.load(0);
+
+        assertTrue(limiter.allow(counter, policy, 2));
+        assertTrue(limiter.allow(counter, policy, 2));
+        assertFalse(limiter.allow(counter, policy, 2));
+
+        // Flushing moves the batch into flight; it still counts until written
+        assertEquals(2, counter.beginFlush());
+        assertFalse(limiter.allow(counter, policy, 2));
+
+        counter.completeFlush(2);
+        assertTrue(limiter.allow(counter, policy, 2));
+    }
+
+    @Test
+    void testFlush_FailedWriteIsRetained() {
+        Policy policy = monthly(10, "UTC");
+        QuotaCounter counter = limiter.counter("test", policy, System.currentTimeMillis());
+        counter.load(0);
+        limiter.allow(counter, policy, 100);
+        limiter.allow(counter, policy, 100);
+
+        assertEquals(2, counter.beginFlush());
+        counter.abortFlush();
+
+        assertEquals(2, counter.getPending());
+        assertEquals(2, counter.beginFlush());
+    }
+
+    @Test
+    void testPeriodStart_UsesPolicyTimezone() {
+        ZoneId tokyo = ZoneId.of("Asia/Tokyo");
+        // 2026-03-31T20:00Z is already April 1st in Tokyo
+        long now = ZonedDateTime.of(2026, 3, 31, 20, 0, 0, 0, ZoneId.of("UTC")).toInstant().toEpochMilli();
+
+        long utcStart = Policy.QuotaPeriod.MONTHLY.periodStart(now, ZoneId.of("UTC"));
+        long tokyoStart = Policy.QuotaPeriod.MONTHLY.periodStart(now, tokyo);
+
+        assertEquals(ZonedDateTime.of(2026, 3, 1, 0, 0, 0, 0, ZoneId.of("UTC")).toInstant().toEpochMilli(), utcStart);
+        assertEquals(ZonedDateTime.of(2026, 4, 1, 0, 0, 0, 0, tokyo).toInstant().toEpochMilli(), tokyoStart);
+        assertEquals(ZonedDateTime.of(2026, 5, 1, 0, 0, 0, 0, tokyo).toInstant().toEpochMilli(),
+                Policy.QuotaPeriod.MONTHLY.periodEnd(tokyoStart, tokyo));
+    }
+
+    @Test
+    void testCounter_NewPeriodGetsFreshCounter() {
+        Policy policy = Policy.builder()
+                .quotaLimit(1)
+                .quotaPeriod(Policy.QuotaPeriod.DAILY)
+                .build();
+        long today = ZonedDateTime.of(2026, 3, 10, 12, 0, 0, 0, ZoneId.of("UTC")).toInstant().toEpochMilli();
+        long tomorrow = today + 24 * 3600 * 1000L;
+
+        QuotaCounter first = limiter.counter("test", policy, today);
+        QuotaCounter second = limiter.counter("test", policy, tomorrow);
+
+        assertNotSame(first, second);
+        assertSame(first, limiter.counter("test", policy, today + 1000));
+    }
+}
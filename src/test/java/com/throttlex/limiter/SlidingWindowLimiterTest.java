@@ -1,15 +1,19 @@
 package com.throttlex.limiter;
 
 import com.throttlex.model.Policy;
+import com.throttlex.model.RateLimitDecision;
 import com.throttlex.model.SlidingWindowRecord;
 import com.throttlex.model.UsageRecord;
 import com.throttlex.persistence.SlidingWindowRepository;
+import com.throttlex.persistence.SlidingWindowRepository.WindowUsage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.Collection;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -43,7 +47,7 @@ class SlidingWindowLimiterTest {
 
     @Test
     void testAllow_WhenUnderLimit_ShouldAllow() {
-        when(slidingWindowRepository.countRequestsInWindow(anyString(), anyLong())).thenReturn(3L);
+        when(slidingWindowRepository.usageInWindow(anyString(), anyLong())).thenReturn(usage(3));
         when(slidingWindowRepository.save(any(SlidingWindowRecord.class)))
                 .thenReturn(SlidingWindowRecord.builder().keyId("test-key").requestTime(System.currentTimeMillis()).build());
 
@@ -55,7 +59,7 @@ class SlidingWindowLimiterTest {
 
     @Test
     void testAllow_WhenAtLimit_ShouldDeny() {
-        when(slidingWindowRepository.countRequestsInWindow(anyString(), anyLong())).thenReturn(5L);
+        when(slidingWindowRepository.usageInWindow(anyString(), anyLong())).thenReturn(usage(5));
 
         boolean result = limiter.allow(record, policy);
 
@@ -64,13 +68,59 @@ class SlidingWindowLimiterTest {
     }
 
     @Test
-    void testAllow_ExpiredEntriesAreCleaned() {
-        when(slidingWindowRepository.countRequestsInWindow(anyString(), anyLong())).thenReturn(0L);
+    void testAllow_CountsOnlyTheCurrentWindow() {
+        when(slidingWindowRepository.usageInWindow(anyString(), anyLong())).thenReturn(usage(0));
         when(slidingWindowRepository.save(any(SlidingWindowRecord.class)))
                 .thenReturn(SlidingWindowRecord.builder().keyId("test-key").requestTime(System.currentTimeMillis()).build());
 
+        long before = System.currentTimeMillis();
         limiter.allow(record, policy);
 
-        verify(slidingWindowRepository).deleteExpired(eq("test-key"), anyLong());
+        // Expiry is left to partition truncation; the count itself bounds the window
+        verify(slidingWindowRepository).usageInWindow(eq("test-key"),
+                longThat(start -> start >= before - 60_000 && start <= System.currentTimeMillis() - 60_000));
+    }
+
+    @Test
+    void testAllowAll_AllowsUpToRemainingCapacityInOrder() {
+        when(slidingWindowRepository.usageInWindow(anyString(), anyLong())).thenReturn(usage(3));
+
+        boolean[] result = limiter.allowAll(record, policy, 4);
+
+        assertArrayEquals(new boolean[]{true, true, false, false}, result);
+        verify(slidingWindowRepository, times(1)).usageInWindow(eq("test-key"), anyLong());
+        verify(slidingWindowRepository).saveAll(argThat(rows -> ((Collection<?>) rows).size() == 2));
+    }
+
+    @Test
+    void testAllowAll_WeightsRequestsByCost() {
+        when(slidingWindowRepository.usageInWindow(anyString(), anyLong())).thenReturn(usage(0));
+
+        // capacity 5: 3 fits, 4 does not, 2 still fits after it
+        boolean[] result = limiter.allowAll(record, policy, new long[]{3, 4, 2});
+
+        assertArrayEquals(new boolean[]{true, false, true}, result);
+        verify(slidingWindowRepository).saveAll(argThat(rows -> rows.stream()
+                .mapToLong(SlidingWindowRecord::getPermits).sum() == 5));
+    }
+
+    @Test
+    void testDecide_RetryAfterIsWhenTheOldestRequestLeavesTheWindow() {
+        long now = System.currentTimeMillis();
+        when(slidingWindowRepository.usageInWindow(anyString(), anyLong()))
+                .thenReturn(new WindowUsage(5, now - 45_000, now - 1_000));
+
+        RateLimitDecision decision = limiter.decide(record, policy, 1);
+
+        assertFalse(decision.isAllowed());
+        assertEquals(5, decision.getLimit());
+        assertEquals(0, decision.getRemaining());
+        assertTrue(decision.getRetryAfterMillis() > 14_000 && decision.getRetryAfterMillis() <= 15_000);
+        assertTrue(decision.getResetMillis() > 58_000 && decision.getResetMillis() <= 59_000);
+    }
+
+    private static WindowUsage usage(long permits) {
+        long t = System.currentTimeMillis() - 1_000;
+        return permits == 0 ? WindowUsage.EMPTY : new WindowUsage(permits, t, t);
     }
 }
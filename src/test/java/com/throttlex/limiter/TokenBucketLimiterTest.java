@@ -1,6 +1,7 @@
 package com.throttlex.limiter;
 
 import com.throttlex.model.Policy;
+import com.throttlex.model.RateLimitDecision;
 import com.throttlex.model.UsageRecord;
 import org.junit.jupiter.api.Test;
 
@@ -51,4 +52,72 @@ class TokenBucketLimiterTest {
         // Should have 0 left after consuming the refilled 1
         assertEquals(0, record.getTokens());
     }
+
+    @Test
+    void testAllow_WeightedRequestTakesAllPermitsOrNone() {
+        Policy policy = Policy.builder()
+                .key("test")
+                .type(Policy.PolicyType.TOKEN_BUCKET)
+                .capacity(100)
+                .refillRate(1)
+                .build();
+        UsageRecord record = UsageRecord.builder()
+                .keyId("test")
+                .tokens(60)
+                .lastRefill(System.currentTimeMillis())
+                .build();
+
+        assertTrue(limiter.allow(record, policy, 50));
+        assertEquals(10, record.getTokens());
+
+        // Not enough for another expensive request, nothing is taken
+        assertFalse(limiter.allow(record, policy, 50));
+        assertEquals(10, record.getTokens());
+        assertTrue(limiter.allow(record, policy));
+    }
+
+    @Test
+    void testDebit_LeavesBucketInDebt() {
+        Policy policy = Policy.builder()
+                .key("test")
+                .type(Policy.PolicyType.TOKEN_BUCKET)
+                .capacity(10)
+                .refillRate(1)
+                .build();
+        UsageRecord record = UsageRecord.builder()
+                .keyId("test")
+                .tokens(3)
+                .lastRefill(System.currentTimeMillis())
+                .build();
+
+        limiter.debit(record, policy, 5);
+
+        assertEquals(-2, record.getTokens());
+        assertFalse(limiter.allow(record, policy));
+    }
+
+    @Test
+    void testDecide_ReportsRemainingAndRetryAfterFromBucketState() {
+        Policy policy = Policy.builder()
+                .key("test")
+                .type(Policy.PolicyType.TOKEN_BUCKET)
+                .capacity(10)
+                .refillRate(2)
+                .build();
+        UsageRecord record = UsageRecord.builder()
+                .keyId("test")
+                .tokens(1)
+                .lastRefill(System.currentTimeMillis())
+                .build();
+
+        RateLimitDecision allowed = limiter.decide(record, policy, 1);
+        assertTrue(allowed.isAllowed());
+        assertEquals(10, allowed.getLimit());
+        assertEquals(0, allowed.getRemaining());
+        assertTrue(allowed.getResetMillis() > 4_000 && allowed.getResetMillis() <= 5_000); // 10 tokens at 2/s
+
+        RateLimitDecision denied = limiter.decide(record, policy, 3);
+        assertFalse(denied.isAllowed());
+        assertTrue(denied.getRetryAfterMillis() > 1_000 && denied.getRetryAfterMillis() <= 1_500); // 3 tokens at 2/s
+    }
 }
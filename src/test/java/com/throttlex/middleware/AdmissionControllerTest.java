@@ -0,0 +1,75 @@
+package com.throttlex.middleware;
+
+import com.throttlex.config.ThrottleXProperties;
+import com.throttlex.model.RequestPriority;
+import com.throttlex.service.PolicyService;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.http.HttpServletRequest;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AdmissionControllerTest {
+
+    private final PolicyService policyService = mock(PolicyService.class);
+
+    private HttpServletRequest request(String uri, String priority, String apiKey) {
+        HttpServletRequest req = mock(HttpServletRequest.class);
+        when(req.getRequestURI()).thenReturn(uri);
+        when(req.getHeader("X-Priority")).thenReturn(priority);
+        when(req.getHeader("X-API-Key")).thenReturn(apiKey);
+        return req;
+    }
+
+    @Test
+    void testClassify_HeaderThenRouteThenKeyClass() {
+        ThrottleXProperties properties = new ThrottleXProperties();
+        properties.getShedding().setPriorityHeader("X-Priority");
+        properties.getShedding().getRoutes().put("/v1/export", RequestPriority.LOW);
+        when(policyService.isKnownApiKey("k")).thenReturn(true);
+        AdmissionController controller = new AdmissionController(properties, null, policyService);
+
+        assertEquals(RequestPriority.CRITICAL.ordinal(), controller.classify(request("/v1/export", "critical", null)));
+        assertEquals(RequestPriority.LOW.ordinal(), controller.classify(request("/v1/export/csv", null, "k")));
+        assertEquals(RequestPriority.CRITICAL.ordinal(), controller.classify(request("/admin/status", null, null)));
+        assertEquals(RequestPriority.HIGH.ordinal(), controller.classify(request("/v1/search", null, "k")));
+        assertEquals(RequestPriority.NORMAL.ordinal(), controller.classify(request("/v1/search", "bogus", null)));
+        assertEquals(RequestPriority.NORMAL.ordinal(), controller.classify(request("/v1/search", null, "made-up")));
+    }
+
+    @Test
+    void testClassify_IgnoresThePriorityHeaderUnlessConfigured() {
+        AdmissionController controller = new AdmissionController(new ThrottleXProperties(), null, policyService);
+
+        assertEquals(RequestPriority.NORMAL.ordinal(), controller.classify(request("/v1/search", "critical", null)));
+    }
+
+    @Test
+    void testTryAdmit_ShedsLowestTiersFirst() {
+        ThrottleXProperties properties = new ThrottleXProperties();
+        properties.getShedding().setMaxInFlight(10);
+        AdmissionController controller = new AdmissionController(properties, null, policyService);
+        int low = RequestPriority.LOW.ordinal();
+        int normal = RequestPriority.NORMAL.ordinal();
+        int critical = RequestPriority.CRITICAL.ordinal();
+
+        // 5 in flight -> the 6th request pushes pressure to 0.6, where LOW is shed
+        for (int i = 0; i < 5; i++) {
+            assertTrue(controller.tryAdmit(normal));
+        }
+        assertFalse(controller.tryAdmit(low));
+        assertTrue(controller.tryAdmit(normal));
+
+        // Critical traffic is never shed
+        for (int i = 0; i < 20; i++) {
+            assertTrue(controller.tryAdmit(critical));
+        }
+        assertFalse(controller.tryAdmit(normal));
+
+        for (int i = 0; i < 26; i++) {
+            controller.release();
+        }
+        assertTrue(controller.tryAdmit(low));
+    }
+}
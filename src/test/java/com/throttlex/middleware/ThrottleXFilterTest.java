@@ -0,0 +1,97 @@
+package com.throttlex.middleware;
+
+import com.throttlex.config.ThrottleXProperties;
+import com.throttlex.model.CheckRequest;
+import com.throttlex.model.RateLimitDecision;
+import com.throttlex.service.HeavyHitterService;
+import com.throttlex.service.ThrottleXService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ThrottleXFilterTest {
+
+    private final CheckRequest request = CheckRequest.of("k");
+    private ThrottleXService service;
+    private AdmissionController admissionController;
+    private ThrottleXFilter filter;
+    private MockHttpServletRequest req;
+    private MockHttpServletResponse res;
+    private CompletableFuture<RateLimitDecision> pending;
+
+    @BeforeEach
+    void setUp() {
+        service = mock(ThrottleXService.class);
+        admissionController = mock(AdmissionController.class);
+        when(admissionController.tryAdmit(anyInt())).thenReturn(true);
+        ThrottleXProperties properties = new ThrottleXProperties();
+        properties.getDecision().setAsyncServlet(true);
+        properties.getDecision().setLatencyBudgetMs(50);
+        filter = new ThrottleXFilter(service, admissionController, mock(HeavyHitterService.class), properties);
+
+        req = new MockHttpServletRequest("GET", "/v1/items");
+        req.setAsyncSupported(true);
+        res = new MockHttpServletResponse();
+        pending = new CompletableFuture<>();
+        when(service.extractRequest(req)).thenReturn(request);
+        when(service.checkAsync(request, "/v1/items")).thenReturn(pending);
+    }
+
+    @Test
+    void testAsyncRejectionIsWrittenAndCompletedOffTheContainerThread() throws Exception {
+        FilterChain chain = mock(FilterChain.class);
+        filter.doFilter(req, res, chain);
+        assertTrue(req.isAsyncStarted(), "Container thread must be released while the check is pending");
+        verify(admissionController, never()).release();
+
+        pending.complete(RateLimitDecision.builder().allowed(false).limit(10).remaining(0)
+                .resetMillis(1500).retryAfterMillis(1500).build());
+
+        assertEquals(429, res.getStatus());
+        assertEquals("2", res.getHeader("Retry-After"));
+        assertFalse(req.isAsyncStarted(), "Rejection must complete the exchange");
+        verify(admissionController, times(1)).release();
+        verifyNoInteractions(chain);
+        verify(service, never()).settleCost(any(), any());
+    }
+
+    @Test
+    void testAsyncAdmissionDispatchesAndReleasesTheSlotOnceOnCompletion() throws Exception {
+        filter.doFilter(req, res, new MockFilterChain());
+
+        pending.complete(RateLimitDecision.builder().allowed(true).limit(10).remaining(9).build());
+
+        MockAsyncContext ctx = (MockAsyncContext) req.getAsyncContext();
+        assertNotNull(ctx.getDispatchedPath(), "Admitted request must be dispatched back to the container");
+        assertEquals("9", res.getHeader("RateLimit-Remaining"));
+        verify(admissionController, never()).release();
+
+        // The container completes the exchange once the dispatched request is served
+        ctx.complete();
+
+        verify(admissionController, times(1)).release();
+        verify(service, times(1)).settleCost(request, req);
+    }
+
+    @Test
+    void testDecisionAlreadyKnownStaysOnTheContainerThread() throws Exception {
+        pending.complete(RateLimitDecision.of(true));
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(req, res, chain);
+
+        assertFalse(req.isAsyncStarted());
+        assertNotNull(chain.getRequest());
+        verify(admissionController, times(1)).release();
+    }
+}
@@ -0,0 +1,66 @@
+package com.throttlex.persistence;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+
+    private static final int KEYS = 20_000;
+
+    @Test
+    void testVirtualNodesSpreadKeysEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c", "d"), 128);
+
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            owned.merge(ring.nodeFor("10.0." + (i / 256) + "." + (i % 256)), 1, Integer::sum);
+        }
+
+        assertEquals(4, owned.size());
+        owned.values().forEach(n -> assertTrue(n > KEYS * 0.18 && n < KEYS * 0.32, "Share " + n + " of " + KEYS));
+    }
+
+    @Test
+    void testAddingANodePointByPointMovesKeysOnlyToIt() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("a", "b", "c"), 64);
+        ConsistentHashRing after = before;
+        for (long point : before.pointsOf("d")) {
+            after = after.withPoint(point, "d");
+        }
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "key-" + i;
+            String owner = after.nodeFor(key);
+            if (!owner.equals(before.nodeFor(key))) {
+                assertEquals("d", owner, "A key may only move to the new node");
+                moved++;
+            }
+        }
+        assertTrue(moved > KEYS * 0.15 && moved < KEYS * 0.35, "Moved " + moved + " of " + KEYS);
+        // Same ring as building with all four nodes up front
+        ConsistentHashRing built = new ConsistentHashRing(List.of("a", "b", "c", "d"), 64);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(built.nodeFor("key-" + i), after.nodeFor("key-" + i));
+        }
+    }
+
+    @Test
+    void testArcOfAPointCoversExactlyTheKeysItTakesOver() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b"), 16);
+        for (long point : ring.pointsOf("c")) {
+            ConsistentHashRing.Arc arc = ring.arcOf(point);
+            ConsistentHashRing next = ring.withPoint(point, "c");
+            for (int i = 0; i < 2000; i++) {
+                long h = ConsistentHashRing.hash("key-" + i);
+                assertEquals(arc.contains(h) ? "c" : ring.ownerOf(h), next.ownerOf(h));
+            }
+            ring = next;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.throttlex.persistence;
+
+import com.throttlex.config.ThrottleXProperties;
+import com.throttlex.model.SlidingWindowRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SlidingWindowRepositoryTest {
+
+    private static final long PARTITION_MS = 60_000;
+
+    private JdbcTemplate jdbcTemplate;
+    private SlidingWindowRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        ThrottleXProperties props = new ThrottleXProperties();
+        props.getSlidingWindow().setPartitionSeconds(60);
+        props.getSlidingWindow().setPartitions(4);
+        jdbcTemplate = mock(JdbcTemplate.class);
+        repository = new SlidingWindowRepository(jdbcTemplate, props);
+    }
+
+    @Test
+    void testTruncatesOnlyTheNextPartitionOncePerBucket() {
+        long now = 100 * PARTITION_MS + 1_000; // bucket 100 -> next bucket 101 maps to slot 1
+
+        repository.dropExpiredPartitions(now);
+        repository.dropExpiredPartitions(now + 1_000);
+
+        verify(jdbcTemplate, times(1)).execute("TRUNCATE TABLE throttlex_sw_log_1");
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void testSkipsTruncateRightBeforeBucketBoundary() {
+        long now = 101 * PARTITION_MS - 1_000;
+
+        repository.dropExpiredPartitions(now);
+
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    @Test
+    void testUsageScansOnlyPartitionsOverlappingTheWindow() {
+        SlidingWindowRepository.WindowUsage stored = new SlidingWindowRepository.WindowUsage(7, 1, 2);
+        when(jdbcTemplate.queryForObject(anyString(), ArgumentMatchers.<RowMapper<SlidingWindowRepository.WindowUsage>>any(), (Object[]) any())).thenReturn(stored);
+
+        SlidingWindowRepository.WindowUsage usage = repository.usageInWindow("k", System.currentTimeMillis() - 30_000);
+
+        assertEquals(7L, usage.getPermits());
+        verify(jdbcTemplate).queryForObject(
+                argThat(sql -> {
+                    int tables = sql.split("FROM throttlex_sw_log_").length - 1;
+                    return tables >= 1 && tables <= 2;
+                }),
+                ArgumentMatchers.<RowMapper<SlidingWindowRepository.WindowUsage>>any(), (Object[]) any());
+    }
+
+    @Test
+    void testSaveAllBatchesPerPartition() {
+        long t = 100 * PARTITION_MS;
+        repository.saveAll(List.of(
+                SlidingWindowRecord.builder().keyId("k").requestTime(t).build(),
+                SlidingWindowRecord.builder().keyId("k").requestTime(t + 1).build(),
+                SlidingWindowRecord.builder().keyId("k").requestTime(t + PARTITION_MS).build()));
+
+        verify(jdbcTemplate).batchUpdate(contains("throttlex_sw_log_0"), argThat((List<Object[]> rows) -> rows.size() == 2));
+        verify(jdbcTemplate).batchUpdate(contains("throttlex_sw_log_1"), argThat((List<Object[]> rows) -> rows.size() == 1));
+    }
+
+    @Test
+    void testMovesRecentLegacyRowsIntoThePartitionsAndDropsTheTable() {
+        JdbcTemplate h2 = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:sw-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1"));
+        h2.execute("CREATE TABLE throttlex_sw_log (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                + "key_id VARCHAR(255) NOT NULL, request_time BIGINT NOT NULL)");
+        long now = 100 * PARTITION_MS + 1_000;
+        h2.update("INSERT INTO throttlex_sw_log (key_id, request_time) VALUES ('k', ?), ('k', ?), ('k', ?)",
+                now - 1_000, now - PARTITION_MS, now - 10 * PARTITION_MS);
+        ThrottleXProperties props = new ThrottleXProperties();
+        props.getSlidingWindow().setPartitionSeconds(60);
+        props.getSlidingWindow().setPartitions(4);
+        SlidingWindowRepository onH2 = new SlidingWindowRepository(h2, props);
+        onH2.createPartitions(StateShard.primary(h2));
+
+        onH2.migrateLegacyLog(now);
+
+        long moved = 0;
+        for (int slot = 0; slot < 4; slot++) {
+            moved += h2.queryForObject("SELECT COALESCE(SUM(permits), 0) FROM throttlex_sw_log_" + slot, Long.class);
+        }
+        assertEquals(2, moved, "Only rows inside the longest window are kept");
+        assertThrows(BadSqlGrammarException.class, () -> h2.queryForObject("SELECT COUNT(*) FROM throttlex_sw_log", Long.class));
+        onH2.migrateLegacyLog(now); // already gone: nothing to do
+    }
+}
@@ -0,0 +1,74 @@
+package com.throttlex.service;
+
+import com.throttlex.config.ThrottleXProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class HeavyHitterServiceTest {
+
+    private HotKeyService hotKeyService;
+    private HeavyHitterService service;
+
+    @BeforeEach
+    void setUp() {
+        ThrottleXProperties props = new ThrottleXProperties();
+        props.getHotKeys().setTopK(3);
+        props.getHotKeys().setStripes(2);
+        hotKeyService = mock(HotKeyService.class);
+        service = new HeavyHitterService(hotKeyService, props);
+    }
+
+    @Test
+    void testCountMinSketchNeverUndercounts() {
+        CountMinSketch sketch = new CountMinSketch(64, 4);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add("key-" + (i % 100));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertTrue(sketch.estimate("key-" + i) >= 10);
+        }
+        sketch.clear();
+        assertEquals(0, sketch.estimate("key-0"));
+    }
+
+    @Test
+    void testSpaceSavingKeepsHeavyKeyAmongManyLightOnes() {
+        SpaceSaving tracker = new SpaceSaving(4);
+        for (int i = 0; i < 200; i++) {
+            tracker.offer("hot");
+            tracker.offer("cold-" + i);
+        }
+        assertTrue(tracker.entries().stream()
+                .anyMatch(e -> e.getKey().equals("hot") && e.getValue() >= 200));
+        assertEquals(4, tracker.entries().size());
+    }
+
+    @Test
+    void testRotatePublishesTopKeysBusiestFirst() {
+        for (int i = 0; i < 300; i++) service.record("a");
+        for (int i = 0; i < 200; i++) service.record("b");
+        for (int i = 0; i < 100; i++) service.record("c");
+        for (int i = 0; i < 50; i++) service.record("key-" + i);
+
+        service.rotate();
+
+        List<HeavyHitterService.HeavyHitter> top = service.topKeys();
+        assertEquals(3, top.size());
+        assertEquals("a", top.get(0).getKey());
+        assertEquals("b", top.get(1).getKey());
+        assertEquals("c", top.get(2).getKey());
+        assertTrue(top.get(0).getCount() >= 300);
+        verify(hotKeyService).applyRates(top);
+
+        // Next window starts empty
+        service.rotate();
+        assertTrue(service.topKeys().isEmpty());
+        verify(hotKeyService, times(2)).applyRates(anyList());
+    }
+}
@@ -0,0 +1,115 @@
+package com.throttlex.service;
+
+import com.throttlex.config.ThrottleXProperties;
+import com.throttlex.model.Policy;
+import com.throttlex.model.RateLimitDecision;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class HotKeyServiceTest {
+
+    private final Policy policy = Policy.builder()
+            .key("hot")
+            .type(Policy.PolicyType.TOKEN_BUCKET)
+            .capacity(1000)
+            .refillRate(100)
+            .build();
+    private DecisionService decisionService;
+    private PolicyService policyService;
+    private ExecutorService executor;
+    private HotKeyService service;
+
+    @BeforeEach
+    void setUp() {
+        decisionService = mock(DecisionService.class);
+        policyService = mock(PolicyService.class);
+        QuotaService quotaService = mock(QuotaService.class);
+        when(policyService.lastKnown("hot")).thenReturn(policy);
+        when(quotaService.tryAcquire(eq("hot"), any())).thenReturn(true);
+        executor = Executors.newSingleThreadExecutor();
+        ThrottleXProperties properties = new ThrottleXProperties();
+        properties.getDecision().setLatencyBudgetMs(200);
+        properties.getHotKeys().setPromoteRate(10);
+        properties.getHotKeys().setDemoteRate(5);
+        service = new HotKeyService(decisionService, policyService, quotaService, executor, properties);
+        service.applyRates(List.of(new HeavyHitterService.HeavyHitter("hot", 1000, 100)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testDecide_ServesFromTheLeaseUnderThePromotedPolicy() throws Exception {
+        when(decisionService.leaseTokens("hot", 50)).thenReturn(50L);
+        HotKeyService.TokenLease lease = service.leaseFor("hot");
+
+        assertNull(service.decideLocal(lease, 1), "An empty lease needs a renewal");
+        RateLimitDecision decision = service.renewAndDecide(lease, 1).get(1, TimeUnit.SECONDS);
+
+        assertTrue(decision.isAllowed());
+        assertTrue(service.decideLocal(lease, 1).isAllowed());
+        assertEquals(48, service.leasedTokens("hot"));
+        verify(decisionService, times(1)).leaseTokens(eq("hot"), anyLong());
+        verify(policyService, times(1)).lastKnown("hot"); // at promotion only
+    }
+
+    @Test
+    void testDecide_DemotesWhenThePolicyIsNoLongerATokenBucket() throws Exception {
+        when(decisionService.leaseTokens(eq("hot"), anyLong())).thenReturn(-1L);
+
+        assertNull(service.renewAndDecide(service.leaseFor("hot"), 1).get(1, TimeUnit.SECONDS),
+                "Must hand the request back to the normal path");
+        assertFalse(service.isPromoted("hot"));
+    }
+
+    @Test
+    void testDecide_HungRenewalTimesOutAndLaterWaitersFailOverAtOnce() throws Exception {
+        CountDownLatch hung = new CountDownLatch(1);
+        when(decisionService.leaseTokens(eq("hot"), anyLong())).thenAnswer(inv -> {
+            hung.await(5, TimeUnit.SECONDS);
+            return 50L;
+        });
+        HotKeyService.TokenLease lease = service.leaseFor("hot");
+
+        ExecutionException first = assertThrows(ExecutionException.class,
+                () -> service.renewAndDecide(lease, 1).get(1, TimeUnit.SECONDS));
+        assertTrue(first.getCause() instanceof TimeoutException);
+
+        // Within the backoff: no new renewal is joined or started
+        assertTrue(service.renewAndDecide(lease, 1).isCompletedExceptionally());
+        verify(decisionService, times(1)).leaseTokens(eq("hot"), anyLong());
+        hung.countDown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPolicyChangeClosesTheLease() throws Exception {
+        ArgumentCaptor<Consumer<String>> listener = ArgumentCaptor.forClass(Consumer.class);
+        verify(policyService).onChange(listener.capture());
+        HotKeyService.TokenLease lease = service.leaseFor("hot");
+
+        listener.getValue().accept("hot");
+
+        assertFalse(service.isPromoted("hot"));
+        assertNull(service.decideLocal(lease, 1));
+        assertNull(service.renewAndDecide(lease, 1).get(1, TimeUnit.SECONDS));
+        verify(decisionService, never()).leaseTokens(anyString(), anyLong());
+    }
+}
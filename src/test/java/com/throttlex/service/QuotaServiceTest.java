@@ -0,0 +1,95 @@
+package com.throttlex.service;
+
+import com.throttlex.config.ThrottleXProperties;
+import com.throttlex.limiter.QuotaLimiter;
+import com.throttlex.model.Policy;
+import com.throttlex.model.RateLimitDecision;
+import com.throttlex.persistence.QuotaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class QuotaServiceTest {
+
+    private final Policy policy = Policy.builder()
+            .key("k")
+            .type(Policy.PolicyType.TOKEN_BUCKET)
+            .quotaLimit(10)
+            .quotaPeriod(Policy.QuotaPeriod.MONTHLY)
+            .quotaTimezone("UTC")
+            .build();
+    private QuotaRepository quotaRepository;
+    private TaskScheduler taskScheduler;
+    private PlatformTransactionManager transactionManager;
+    private QuotaService service;
+
+    @BeforeEach
+    void setUp() {
+        quotaRepository = mock(QuotaRepository.class);
+        taskScheduler = mock(TaskScheduler.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        ThrottleXProperties properties = new ThrottleXProperties();
+        properties.getQuota().setMaxOvershoot(2);
+        service = new QuotaService(quotaRepository, new QuotaLimiter(), properties, taskScheduler, transactionManager);
+    }
+
+    /** Run the write-back queued on the scheduler, as its thread would. */
+    private void runScheduledFlush() {
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(taskScheduler, atLeastOnce()).schedule(flush.capture(), any(Instant.class));
+        flush.getValue().run();
+    }
+
+    @Test
+    void testTryAcquire_DeniesBrieflyAtTheUnreconciledCapAndWritesBackOffThePath() {
+        when(quotaRepository.findUsed(eq("k"), anyLong())).thenReturn(Optional.of(0L)).thenReturn(Optional.of(2L));
+        when(quotaRepository.addUsage(eq("k"), anyLong(), eq(2L))).thenReturn(1);
+
+        assertTrue(service.tryAcquire("k", policy));
+        assertTrue(service.tryAcquire("k", policy));
+        assertFalse(service.tryAcquire("k", policy));
+        verify(quotaRepository, never()).addUsage(anyString(), anyLong(), anyLong());
+        RateLimitDecision denial = service.denial("k", policy, System.currentTimeMillis());
+        assertEquals(1000, denial.getRetryAfterMillis(), "Quota is left, so the client retries after one flush");
+
+        runScheduledFlush();
+
+        verify(transactionManager).getTransaction(argThat(def ->
+                def.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        assertTrue(service.tryAcquire("k", policy));
+    }
+
+    @Test
+    void testTryAcquire_KeepsDenyingBrieflyWhileTheWriteBackFails() {
+        when(quotaRepository.findUsed(eq("k"), anyLong())).thenReturn(Optional.of(0L));
+        when(quotaRepository.addUsage(eq("k"), anyLong(), anyLong())).thenThrow(new IllegalStateException("down"));
+
+        service.tryAcquire("k", policy);
+        service.tryAcquire("k", policy);
+        runScheduledFlush();
+
+        assertFalse(service.tryAcquire("k", policy));
+        assertEquals(1000, service.denial("k", policy, System.currentTimeMillis()).getRetryAfterMillis());
+        verify(taskScheduler, times(2)).schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    void testTryAcquire_DeniesWhenTheQuotaIsUsed() {
+        when(quotaRepository.findUsed(eq("k"), anyLong())).thenReturn(Optional.of(10L));
+
+        assertFalse(service.tryAcquire("k", policy));
+        assertTrue(service.denial("k", policy, System.currentTimeMillis()).getRetryAfterMillis() > 1000);
+        verify(quotaRepository, never()).addUsage(anyString(), anyLong(), anyLong());
+        verifyNoInteractions(taskScheduler);
+    }
+}
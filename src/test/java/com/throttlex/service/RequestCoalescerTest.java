@@ -0,0 +1,135 @@
+package com.throttlex.service;
+
+import com.throttlex.config.ThrottleXProperties;
+import com.throttlex.model.CheckRequest;
+import com.throttlex.model.RateLimitDecision;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RequestCoalescerTest {
+
+    private final CheckRequest request = CheckRequest.of("k");
+    private DecisionService decisionService;
+    private ExecutorService executor;
+    private RequestCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        decisionService = mock(DecisionService.class);
+        executor = Executors.newFixedThreadPool(2);
+        ThrottleXProperties properties = new ThrottleXProperties();
+        properties.getDecision().setCoalesceWindowMicros(0);
+        coalescer = new RequestCoalescer(decisionService, executor, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testRequestsArrivingDuringATransactionShareTheNextOne() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        when(decisionService.decideBatch(eq(request), any(long[].class))).thenAnswer(inv -> {
+            int count = inv.<long[]>getArgument(1).length;
+            if (count == 1) {
+                firstStarted.countDown();
+                releaseFirst.await(5, TimeUnit.SECONDS);
+                return decisions(true);
+            }
+            // Second batch: first allowed, rest denied, in arrival order
+            boolean[] out = new boolean[count];
+            out[0] = true;
+            return decisions(out);
+        });
+
+        CompletableFuture<RateLimitDecision> first = coalescer.submit(request);
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+
+        List<CompletableFuture<RateLimitDecision>> queued = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            queued.add(coalescer.submit(request));
+        }
+        releaseFirst.countDown();
+
+        assertTrue(first.get(5, TimeUnit.SECONDS).isAllowed());
+        assertTrue(queued.get(0).get(5, TimeUnit.SECONDS).isAllowed());
+        assertFalse(queued.get(1).get(5, TimeUnit.SECONDS).isAllowed());
+        assertFalse(queued.get(2).get(5, TimeUnit.SECONDS).isAllowed());
+        verify(decisionService).decideBatch(request, new long[]{1});
+        verify(decisionService).decideBatch(request, new long[]{1, 1, 1});
+    }
+
+    @Test
+    void testCancelledRequestsAreSkipped() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        when(decisionService.decideBatch(eq(request), any(long[].class))).thenAnswer(inv -> {
+            int count = inv.<long[]>getArgument(1).length;
+            if (firstStarted.getCount() > 0) {
+                firstStarted.countDown();
+                releaseFirst.await(5, TimeUnit.SECONDS);
+            }
+            boolean[] out = new boolean[count];
+            Arrays.fill(out, true);
+            return decisions(out);
+        });
+
+        coalescer.submit(request);
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<RateLimitDecision> gaveUp = coalescer.submit(request);
+        CompletableFuture<RateLimitDecision> waiting = coalescer.submit(request);
+        gaveUp.cancel(false);
+        releaseFirst.countDown();
+
+        assertTrue(waiting.get(5, TimeUnit.SECONDS).isAllowed());
+        verify(decisionService, times(2)).decideBatch(request, new long[]{1});
+    }
+
+    @Test
+    void testBatchCarriesEachRequestsCost() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        when(decisionService.decideBatch(eq(request), any(long[].class))).thenAnswer(inv -> {
+            long[] costs = inv.getArgument(1);
+            if (firstStarted.getCount() > 0) {
+                firstStarted.countDown();
+                releaseFirst.await(5, TimeUnit.SECONDS);
+            }
+            return decisions(new boolean[costs.length]);
+        });
+
+        coalescer.submit(request);
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<RateLimitDecision> cheap = coalescer.submit(request);
+        CompletableFuture<RateLimitDecision> expensive = coalescer.submit(CheckRequest.builder().key("k").cost(50).build());
+        releaseFirst.countDown();
+
+        cheap.get(5, TimeUnit.SECONDS);
+        expensive.get(5, TimeUnit.SECONDS);
+        verify(decisionService).decideBatch(request, new long[]{1, 50});
+    }
+
+    private static RateLimitDecision[] decisions(boolean... allowed) {
+        RateLimitDecision[] out = new RateLimitDecision[allowed.length];
+        for (int i = 0; i < allowed.length; i++) {
+            out[i] = RateLimitDecision.of(allowed[i]);
+        }
+        return out;
+    }
+}
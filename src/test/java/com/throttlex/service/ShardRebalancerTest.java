@@ -0,0 +1,194 @@
+package com.throttlex.service;
+
+import com.throttlex.config.ThrottleXProperties;
+import com.throttlex.dto.ShardRequest;
+import com.throttlex.dto.ShardResponse;
+import com.throttlex.model.SlidingWindowRecord;
+import com.throttlex.model.UsageRecord;
+import com.throttlex.persistence.ConsistentHashRing;
+import com.throttlex.persistence.ShardRouter;
+import com.throttlex.persistence.ShardedUsageStore;
+import com.throttlex.persistence.SlidingWindowRepository;
+import com.throttlex.persistence.StateShard;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/** Runs against embedded H2 databases, one per shard. */
+class ShardRebalancerTest {
+
+    private static final int KEYS = 600;
+
+    private ShardRouter router;
+    private ShardedUsageStore usageStore;
+    private SlidingWindowRepository slidingWindowRepository;
+    private ShardRebalancer rebalancer;
+
+    @BeforeEach
+    void setUp() {
+        ThrottleXProperties props = new ThrottleXProperties();
+        props.getSharding().setEnabled(true);
+        props.getSharding().setVirtualNodes(32);
+        for (String name : new String[]{"s0", "s1", "s2"}) {
+            ThrottleXProperties.Shard shard = new ThrottleXProperties.Shard();
+            shard.setName(name);
+            shard.setUrl(h2Url(name));
+            shard.setMaximumPoolSize(2);
+            props.getSharding().getShards().add(shard);
+        }
+        router = new ShardRouter(null, props);
+        usageStore = new ShardedUsageStore(router);
+        slidingWindowRepository = new SlidingWindowRepository(router, null, props);
+        for (StateShard shard : router.shards()) {
+            usageStore.createTable(shard);
+            slidingWindowRepository.createPartitions(shard);
+        }
+        rebalancer = new ShardRebalancer(router, usageStore, slidingWindowRepository);
+    }
+
+    @AfterEach
+    void tearDown() {
+        router.close();
+    }
+
+    @Test
+    void testEachKeyIsStoredOnlyOnItsShard() {
+        for (int i = 0; i < KEYS; i++) {
+            save("key-" + i, i);
+        }
+
+        long total = 0;
+        for (ShardResponse shard : rebalancer.listShards()) {
+            assertTrue(shard.getKeys() > KEYS / 6, shard.getName() + " holds " + shard.getKeys());
+            total += shard.getKeys();
+        }
+        assertEquals(KEYS, total);
+        assertEquals(KEYS, usageStore.findAll().size());
+        assertEquals(42, usageStore.inTransaction("key-42", () -> usageStore.findByKeyId("key-42")).get().getTokens());
+    }
+
+    @Test
+    void testAddingAShardMovesOnlyItsArcsAndKeepsTheirState() {
+        long now = System.currentTimeMillis();
+        Map<String, String> ownerBefore = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            String key = "key-" + i;
+            save(key, i);
+            slidingWindowRepository.save(SlidingWindowRecord.builder().keyId(key).requestTime(now).permits(i + 1).build());
+            ownerBefore.put(key, router.shardFor(key).getName());
+        }
+
+        ShardResponse added = rebalancer.addShard(ShardRequest.builder().name("s3").url(h2Url("s3")).maximumPoolSize(2).build());
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "key-" + i;
+            String owner = router.shardFor(key).getName();
+            if (!owner.equals(ownerBefore.get(key))) {
+                assertEquals("s3", owner);
+                moved++;
+            }
+            UsageRecord record = usageStore.findByKeyId(key).orElseThrow();
+            assertEquals(i, record.getTokens(), "State of " + key + " kept");
+            assertEquals(i + 1, slidingWindowRepository.usageInWindow(key, now - 1000).getPermits());
+        }
+        assertEquals(moved, added.getMovedKeys());
+        assertEquals(moved, added.getMovedLogRows());
+        assertEquals(moved, added.getKeys());
+        assertEquals(32, added.getRingPoints());
+        // Donors no longer hold the moved keys
+        assertEquals(KEYS, usageStore.findAll().size());
+    }
+
+    @Test
+    void testAddShardResumesAfterAFailureMidRebalance() {
+        for (int i = 0; i < KEYS; i++) {
+            save("key-" + i, i);
+        }
+        // Fail once while deleting a donor's copy, after that arc already went live
+        ShardedUsageStore failing = spy(usageStore);
+        AtomicInteger deletes = new AtomicInteger();
+        doAnswer(inv -> {
+            if (deletes.incrementAndGet() == 5) {
+                throw new IllegalStateException("donor unavailable");
+            }
+            return inv.callRealMethod();
+        }).when(failing).deleteInArc(any(), any());
+        ShardRebalancer flaky = new ShardRebalancer(router, failing, slidingWindowRepository);
+        ShardRequest request = ShardRequest.builder().name("s3").url(h2Url("s3")).maximumPoolSize(2).build();
+
+        assertThrows(IllegalStateException.class, () -> flaky.addShard(request));
+        assertTrue(router.ring().pointCount("s3") > 0 && router.ring().pointCount("s3") < 32);
+
+        ShardResponse resumed = flaky.addShard(request);
+
+        assertEquals(32, resumed.getRingPoints());
+        assertEquals(KEYS, usageStore.findAll().size(), "No key may be left behind on its donor");
+        for (int i = 0; i < KEYS; i++) {
+            String key = "key-" + i;
+            assertEquals(i, usageStore.findByKeyId(key).orElseThrow().getTokens(), "State of " + key + " kept");
+        }
+        assertThrows(IllegalArgumentException.class, () -> flaky.addShard(request));
+    }
+
+    @Test
+    void testMovingAnArcPausesOnlyItsKeys() throws Exception {
+        long point = router.ring().pointsOf("s0")[0];
+        ConsistentHashRing.Arc arc = router.ring().arcOf(point);
+        String inside = null;
+        String outside = null;
+        for (int i = 0; inside == null || outside == null; i++) {
+            String key = "key-" + i;
+            if (arc.contains(ConsistentHashRing.hash(key))) {
+                inside = inside == null ? key : inside;
+            } else {
+                outside = outside == null ? key : outside;
+            }
+        }
+        CountDownLatch copying = new CountDownLatch(1);
+        CountDownLatch finishCopy = new CountDownLatch(1);
+        CompletableFuture<Void> move = CompletableFuture.runAsync(() -> router.exclusively(arc, () -> {
+            copying.countDown();
+            try {
+                finishCopy.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(copying.await(5, TimeUnit.SECONDS));
+
+        String outsideKey = outside;
+        assertEquals(router.shardFor(outsideKey).getName(),
+                CompletableFuture.supplyAsync(() -> router.route(outsideKey, StateShard::getName)).get(1, TimeUnit.SECONDS),
+                "Keys outside the arc must not wait for the copy");
+        String insideKey = inside;
+        CompletableFuture<String> paused = CompletableFuture.supplyAsync(() -> router.route(insideKey, StateShard::getName));
+        Thread.sleep(100);
+        assertFalse(paused.isDone(), "Keys inside the arc must wait for the copy");
+
+        finishCopy.countDown();
+        move.get(1, TimeUnit.SECONDS);
+        assertNotNull(paused.get(1, TimeUnit.SECONDS));
+    }
+
+    private void save(String key, long tokens) {
+        usageStore.inTransaction(key, () -> usageStore.save(UsageRecord.builder()
+                .keyId(key).tokens(tokens).lastRefill(System.currentTimeMillis()).build()));
+    }
+
+    private static String h2Url(String name) {
+        return "jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+    }
+}
@@ -0,0 +1,122 @@
+package com.throttlex.service;
+
+import com.throttlex.config.ThrottleXProperties;
+import com.throttlex.model.CheckRequest;
+import com.throttlex.model.Policy;
+import com.throttlex.model.RateLimitDecision;
+import com.throttlex.persistence.UsageStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ThrottleXServiceTest {
+
+    private final CheckRequest request = CheckRequest.of("k");
+    private RequestCoalescer coalescer;
+    private FallbackService fallbackService;
+    private CircuitBreaker circuitBreaker;
+    private ThrottleXService service;
+
+    @BeforeEach
+    void setUp() {
+        coalescer = mock(RequestCoalescer.class);
+        fallbackService = mock(FallbackService.class);
+        circuitBreaker = new CircuitBreaker(5, 5000);
+        service = service(20, mock(HotKeyService.class));
+    }
+
+    private ThrottleXService service(long latencyBudgetMs, HotKeyService hotKeyService) {
+        ThrottleXProperties properties = new ThrottleXProperties();
+        properties.getDecision().setLatencyBudgetMs(latencyBudgetMs);
+        return new ThrottleXService(mock(UsageStore.class), mock(PolicyService.class),
+                mock(QuotaService.class), mock(ShadowPolicyService.class), mock(DecisionService.class),
+                coalescer, hotKeyService, fallbackService, circuitBreaker,
+                mock(ExecutorService.class), properties);
+    }
+
+    @Test
+    void testCheckAsyncCompletesWithTheDatabaseDecision() {
+        CompletableFuture<RateLimitDecision> ticket = new CompletableFuture<>();
+        when(coalescer.submit(request)).thenReturn(ticket);
+
+        CompletableFuture<RateLimitDecision> pending = service.checkAsync(request, null);
+        assertFalse(pending.isDone(), "Must not block the caller while the database decides");
+
+        ticket.complete(RateLimitDecision.of(false));
+        assertFalse(pending.join().isAllowed());
+        verifyNoInteractions(fallbackService);
+    }
+
+    @Test
+    void testCheckAsyncFallsBackAndTimesOutTheTicketWhenTheBudgetRunsOut() throws Exception {
+        CompletableFuture<RateLimitDecision> ticket = new CompletableFuture<>();
+        when(coalescer.submit(request)).thenReturn(ticket);
+        when(fallbackService.decide(eq("k"), anyLong())).thenReturn(RateLimitDecision.of(true));
+
+        RateLimitDecision decision = service.checkAsync(request, null).get(1, TimeUnit.SECONDS);
+
+        assertTrue(decision.isAllowed());
+        assertTrue(ticket.isCompletedExceptionally(), "Timed-out ticket must be skipped by its batch");
+        assertEquals(1, circuitBreaker.getConsecutiveFailures());
+    }
+
+    @Test
+    void testCheckWithoutBudgetConsultsTheOpenBreakerOnce() {
+        ThrottleXService inline = service(0, mock(HotKeyService.class));
+        for (int i = 0; i < 5; i++) {
+            circuitBreaker.recordFailure();
+        }
+        when(fallbackService.decide(eq("k"), anyLong())).thenReturn(RateLimitDecision.of(false));
+
+        assertFalse(inline.check(request, null).isAllowed());
+        assertEquals(1, circuitBreaker.getShortCircuited());
+        verifyNoInteractions(coalescer);
+    }
+
+    @Test
+    void testBreakerTripsWhileAPromotedKeyIsServedFromItsLease() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            DecisionService decisionService = mock(DecisionService.class);
+            PolicyService policyService = mock(PolicyService.class);
+            QuotaService quotaService = mock(QuotaService.class);
+            when(policyService.lastKnown("hot")).thenReturn(Policy.builder()
+                    .key("hot").type(Policy.PolicyType.TOKEN_BUCKET).capacity(1000).refillRate(100).build());
+            when(quotaService.tryAcquire(eq("hot"), any())).thenReturn(true);
+            when(decisionService.leaseTokens(eq("hot"), anyLong())).thenReturn(100L);
+            ThrottleXProperties properties = new ThrottleXProperties();
+            properties.getDecision().setLatencyBudgetMs(200);
+            properties.getHotKeys().setPromoteRate(10);
+            HotKeyService hotKeyService = new HotKeyService(decisionService, policyService, quotaService, executor, properties);
+            hotKeyService.applyRates(List.of(new HeavyHitterService.HeavyHitter("hot", 1000, 100)));
+            ThrottleXService throttle = service(200, hotKeyService);
+            CheckRequest hot = CheckRequest.of("hot");
+            assertTrue(throttle.checkAsync(hot, null).get(1, TimeUnit.SECONDS).isAllowed()); // takes the lease
+
+            // The database is down for every other key while the hot key keeps hitting its lease
+            when(coalescer.submit(request)).thenReturn(CompletableFuture.failedFuture(new RuntimeException("down")));
+            when(fallbackService.decide(eq("k"), anyLong())).thenReturn(RateLimitDecision.of(true));
+            for (int i = 0; i < 5; i++) {
+                assertTrue(throttle.checkAsync(hot, null).get(1, TimeUnit.SECONDS).isAllowed());
+                throttle.checkAsync(request, null).get(1, TimeUnit.SECONDS);
+            }
+
+            assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+            assertTrue(throttle.checkAsync(hot, null).get(1, TimeUnit.SECONDS).isAllowed());
+            assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+            assertEquals(0, circuitBreaker.getShortCircuited(), "Lease hits must not pass through the breaker");
+            verify(decisionService, times(1)).leaseTokens(eq("hot"), anyLong());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}